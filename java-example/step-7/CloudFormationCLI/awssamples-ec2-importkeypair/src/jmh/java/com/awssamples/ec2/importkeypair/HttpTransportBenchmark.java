@@ -0,0 +1,138 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+
+/**
+ * The create, read and list calls of the handlers through each HttpTransport, against an
+ * Ec2StubServer holding 100 key pairs, so the transports differ only in how they move bytes. The
+ * call benchmarks report throughput and latency percentiles; add -t to load them from several
+ * threads, and -p latencyMillis=20 to add server latency.
+ * firstCall measures a transport's cold start: building it and an EC2 client and making the first
+ * call in a fresh JVM, once per fork.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpTransportBenchmark {
+    private static final int KEY_PAIRS = 100;
+    private static final SdkBytes PUBLIC_KEY_MATERIAL = SdkBytes.fromUtf8String(Ec2StubServer.PUBLIC_KEY);
+
+    @Param({"wrapper", "apache", "url-connection"})
+    public String transport;
+
+    // held back by the stub before every response, as EC2's own latency would
+    @Param({"0"})
+    public long latencyMillis;
+
+    private Ec2StubServer stub;
+    private SdkHttpClient httpClient;
+    // built by the first call, so that firstCall measures building it
+    private volatile Ec2Client ec2Client;
+    private final AtomicLong imported = new AtomicLong();
+    private DescribeKeyPairsRequest readRequest;
+    private DescribeKeyPairsRequest listRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        stub = new Ec2StubServer(0, latencyMillis);
+        stub.start();
+        String keyPairId = null;
+        for (int i = 0; i < KEY_PAIRS; i++) {
+            keyPairId = stub.seed("benchmark-" + i, Collections.singletonMap("team", "benchmark"));
+        }
+        readRequest = Translator.translateToReadRequest(ResourceModel.builder()
+                .keyPairId(keyPairId)
+                .build());
+        listRequest = Translator.translateToListRequest(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (ec2Client != null) {
+            ec2Client.close();
+        }
+        // the wrapper's client is shared with everything else in the JVM
+        if (httpClient != null && HttpTransport.parse(transport) != HttpTransport.WRAPPER) {
+            httpClient.close();
+        }
+        stub.stop();
+    }
+
+    private Ec2Client client() {
+        final Ec2Client client = ec2Client;
+        return client != null ? client : buildClient();
+    }
+
+    private synchronized Ec2Client buildClient() {
+        if (ec2Client == null) {
+            httpClient = HttpTransport.parse(transport).create(name -> null);
+            ec2Client = Ec2Client.builder()
+                    .httpClient(httpClient)
+                    .endpointOverride(stub.endpoint())
+                    .region(Region.US_EAST_1)
+                    .credentialsProvider(StaticCredentialsProvider.create(
+                            AwsBasicCredentials.create("accessKey", "secretKey")))
+                    .build();
+        }
+        return ec2Client;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public DescribeKeyPairsResponse firstCall() {
+        return client().describeKeyPairs(readRequest);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public ImportKeyPairResponse create() {
+        // key names must be unique, so every call imports another key pair
+        return client().importKeyPair(ImportKeyPairRequest.builder()
+                .keyName("imported-" + imported.incrementAndGet())
+                .publicKeyMaterial(PUBLIC_KEY_MATERIAL)
+                .build());
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public DescribeKeyPairsResponse read() {
+        return client().describeKeyPairs(readRequest);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public DescribeKeyPairsResponse list() {
+        return client().describeKeyPairs(listRequest);
+    }
+}
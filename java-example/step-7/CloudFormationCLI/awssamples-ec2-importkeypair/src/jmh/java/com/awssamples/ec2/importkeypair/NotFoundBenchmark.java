@@ -0,0 +1,104 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.cloudformation.exceptions.CfnNotFoundException;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+/**
+ * Cost of reading a key pair that no longer exists. readMissingKeyPair runs the
+ * ReadHandler against a client that always answers with an empty describe;
+ * readCachedMissingKeyPair is the same read of a key pair the handler deleted, answered by the NotFoundCache;
+ * exceptionPath is the throw, catch and rewrap the handler used to do for the same outcome.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotFoundBenchmark extends AbstractTestBase {
+
+    private ReadHandler handler;
+    private AmazonWebServicesClientProxy proxy;
+    private ProxyClient<Ec2Client> proxyClient;
+    private DescribeKeyPairsRequest describeKeyPairsRequest;
+
+    @Setup
+    public void setup() {
+        final DescribeKeyPairsResponse empty = DescribeKeyPairsResponse.builder().build();
+        final Ec2Client client = new Ec2Client() {
+            @Override
+            public DescribeKeyPairsResponse describeKeyPairs(final DescribeKeyPairsRequest request) {
+                return empty;
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        handler = new ReadHandler();
+        proxy = new AmazonWebServicesClientProxy(logger, MOCK_CREDENTIALS, () -> Duration.ofSeconds(600).toMillis());
+        proxyClient = MOCK_PROXY(proxy, client);
+        describeKeyPairsRequest = Translator.translateToReadRequest(ResourceModel.builder().keyPairId(keyPairId).build());
+    }
+
+    // only deletes populate the cache, so the cached read stands in for a read after a delete
+    @Setup(Level.Iteration)
+    public void markDeleted() {
+        NotFoundCache.getInstance().markMissing(request(), keyPairId);
+    }
+
+    @Benchmark
+    public ProgressEvent<ResourceModel, CallbackContext> readMissingKeyPair() {
+        NotFoundCache.getInstance().clear();
+        return readKeyPair();
+    }
+
+    @Benchmark
+    public ProgressEvent<ResourceModel, CallbackContext> readCachedMissingKeyPair() {
+        return readKeyPair();
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> readKeyPair() {
+        return handler.handleRequest(proxy, request(), new CallbackContext(), proxyClient, logger);
+    }
+
+    private ResourceHandlerRequest<ResourceModel> request() {
+        return ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(ResourceModel.builder().keyPairId(keyPairId).build())
+                .build();
+    }
+
+    @Benchmark
+    public RuntimeException exceptionPath() {
+        try {
+            throw new CfnNotFoundException(ResourceModel.TYPE_NAME, "Resource not found");
+        } catch (final Exception e) {
+            return handler.handleException(e, describeKeyPairsRequest);
+        }
+    }
+}
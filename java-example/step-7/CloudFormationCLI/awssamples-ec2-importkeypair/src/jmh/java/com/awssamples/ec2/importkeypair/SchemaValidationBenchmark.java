@@ -0,0 +1,83 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.cloudformation.resource.Validator;
+import software.amazon.cloudformation.resource.exceptions.ValidationException;
+
+/**
+ * Compiled ResourceModelValidator against the generic JSON schema validator, both with the schema
+ * parsed on every call (what happens when nothing is cached) and with a parsed schema reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaValidationBenchmark extends AbstractTestBase {
+
+    @Param({"0", "10", "50"})
+    public int tagCount;
+
+    private ResourceModel model;
+    private String modelJson;
+    private JSONObject schema;
+    private Validator genericValidator;
+    private ResourceModelValidator compiledValidator;
+
+    @Setup
+    public void setup() throws Exception {
+        final List<Tag> modelTags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            modelTags.add(Tag.builder().key("key" + i).value("value" + i).build());
+        }
+        model = ResourceModel.builder()
+                .keyName(keyName)
+                .publicKeyMaterial(publicKeyMaterial)
+                .tags(modelTags)
+                .build();
+        modelJson = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .writeValueAsString(model);
+        schema = new Configuration().resourceSchemaJSONObject();
+        genericValidator = new Validator();
+        compiledValidator = ResourceModelValidator.getInstance();
+    }
+
+    @Benchmark
+    public String compiled() {
+        return compiledValidator.validate(model, true);
+    }
+
+    @Benchmark
+    public JSONObject genericParsingSchema() throws ValidationException {
+        final JSONObject freshSchema = new JSONObject(schema.toString());
+        final JSONObject modelObject = new JSONObject(modelJson);
+        genericValidator.validateObject(modelObject, freshSchema);
+        return modelObject;
+    }
+
+    @Benchmark
+    public JSONObject genericCachedSchema() throws ValidationException {
+        final JSONObject modelObject = new JSONObject(modelJson);
+        genericValidator.validateObject(modelObject, schema);
+        return modelObject;
+    }
+}
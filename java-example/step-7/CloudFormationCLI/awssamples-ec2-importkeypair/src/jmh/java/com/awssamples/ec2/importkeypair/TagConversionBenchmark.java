@@ -0,0 +1,92 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TagHelper conversions against the Optional and Stream pipelines they replaced. Run with -prof gc
+ * and compare gc.alloc.rate.norm, the bytes allocated per conversion:
+ * {@code -Djmh.args="TagConversionBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagConversionBenchmark {
+
+    @Param({"0", "10", "50"})
+    public int tagCount;
+
+    private List<Tag> modelTags;
+    private List<software.amazon.awssdk.services.ec2.model.Tag> sdkTags;
+    private Map<String, String> tagMap;
+
+    @Setup
+    public void setup() {
+        modelTags = new ArrayList<>(tagCount);
+        sdkTags = new ArrayList<>(tagCount);
+        tagMap = new LinkedHashMap<>();
+        for (int i = 0; i < tagCount; i++) {
+            modelTags.add(Tag.builder().key("key" + i).value("value" + i).build());
+            sdkTags.add(software.amazon.awssdk.services.ec2.model.Tag.builder().key("key" + i).value("value" + i).build());
+            tagMap.put("key" + i, "value" + i);
+        }
+    }
+
+    @Benchmark
+    public List<Tag> toModel() {
+        return TagHelper.translateTagsToSdk(sdkTags);
+    }
+
+    @Benchmark
+    public List<Tag> toModelStreams() {
+        return streamOfOrEmpty(sdkTags)
+                .map(tag -> Tag.builder().key(tag.key()).value(tag.value()).build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<software.amazon.awssdk.services.ec2.model.Tag> toSdk() {
+        return TagHelper.translateTagsFromSdk(modelTags);
+    }
+
+    @Benchmark
+    public List<software.amazon.awssdk.services.ec2.model.Tag> toSdkStreams() {
+        return streamOfOrEmpty(modelTags)
+                .map(tag -> software.amazon.awssdk.services.ec2.model.Tag.builder()
+                        .key(tag.getKey()).value(tag.getValue()).build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<software.amazon.awssdk.services.ec2.model.Tag> fromMap() {
+        return TagHelper.convertResourceTagsToList(tagMap);
+    }
+
+    private static <T> Stream<T> streamOfOrEmpty(final Collection<T> collection) {
+        return Optional.ofNullable(collection)
+                .map(Collection::stream)
+                .orElseGet(Stream::empty);
+    }
+}
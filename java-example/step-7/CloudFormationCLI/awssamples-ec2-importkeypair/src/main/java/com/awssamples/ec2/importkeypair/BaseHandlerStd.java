@@ -1,7 +1,6 @@
 package com.awssamples.ec2.importkeypair;
 
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
-import software.amazon.awssdk.services.cloudformation.model.LimitExceededException;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
 import software.amazon.awssdk.services.ec2.model.Ec2Exception;
@@ -20,25 +19,149 @@ import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
 import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
 // Placeholder for the functionality that could be shared across Create/Read/Update/Delete/List Handlers
+// Handler instances are shared across invocations, so keep per-invocation state out of fields
 
 public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
+  static {
+    // the wrapper creates the handlers at container init, ahead of the first invocation
+    ConnectionPrewarm.atInit();
+  }
+
   @Override
   public final ProgressEvent<ResourceModel, CallbackContext> handleRequest(
     final AmazonWebServicesClientProxy proxy,
     final ResourceHandlerRequest<ResourceModel> request,
     final CallbackContext callbackContext,
     final Logger logger) {
-    return handleRequest(
+    return invoke(
       proxy,
       request,
       callbackContext != null ? callbackContext : new CallbackContext(),
-      proxy.newProxy(ClientBuilder::getClient),
+      TracedProxyClient.wrap(proxy.newProxy(ClientBuilder::getClient), null),
       logger
     );
   }
 
-  protected String KEYPAIR_NOT_FOUND_ERROR = "InvalidKeyPair.NotFound";
+  /**
+   * Runs the handler inside the invocation's root span and flight recorder event, with the metric
+   * lines of this thread going to the invocation's log until it returns.
+   */
+  final ProgressEvent<ResourceModel, CallbackContext> invoke(
+    final AmazonWebServicesClientProxy proxy,
+    final ResourceHandlerRequest<ResourceModel> request,
+    final CallbackContext callbackContext,
+    final ProxyClient<Ec2Client> proxyClient,
+    final Logger logger) {
+    final String handler = getClass().getSimpleName();
+    final String keyPairId = request.getDesiredResourceState() != null
+        ? request.getDesiredResourceState().getKeyPairId() : null;
+    final Logger previousLogger = EmbeddedMetrics.logTo(logger);
+    final Object event = FlightRecorderEvents.beginInvocation();
+    try (Tracing.Span span = Tracing.start(handler, Tracing.SPAN_KIND_SERVER)) {
+      span.attribute("handler", handler)
+          .attribute("key_pair.id", keyPairId);
+      final ProgressEvent<ResourceModel, CallbackContext> progressEvent =
+          handleRequest(proxy, request, callbackContext, proxyClient, logger);
+      final String errorCode = progressEvent.getErrorCode() != null ? progressEvent.getErrorCode().name() : null;
+      span.attribute("status", String.valueOf(progressEvent.getStatus()));
+      if (errorCode != null) {
+        span.error(errorCode, progressEvent.getMessage());
+      }
+      FlightRecorderEvents.endInvocation(event, handler, keyPairId, String.valueOf(progressEvent.getStatus()),
+          errorCode);
+      return progressEvent;
+    } catch (final RuntimeException e) {
+      FlightRecorderEvents.endInvocation(event, handler, keyPairId, null, e.getClass().getSimpleName());
+      throw e;
+    } finally {
+      EmbeddedMetrics.logTo(previousLogger);
+    }
+  }
+
+  protected static final String KEYPAIR_NOT_FOUND_ERROR = "InvalidKeyPair.NotFound";
+  protected static final String KEYPAIR_NOT_FOUND_MESSAGE = "Keypair not found";
+  protected static final String KEYPAIR_DUPLICATE_ERROR = "InvalidKeyPair.Duplicate";
+  // a multi-region key pair is retried this many times across invocations before failures in a region are final
+  protected static final int MAX_REGION_ATTEMPTS = 3;
+  protected static final int REGION_RETRY_DELAY_SECONDS = 5;
+
+  /**
+   * @param proxy the proxy of the current invocation
+   * @param region one of the additional regions of a multi-region key pair
+   * @return a proxy client for that region, sharing the invocation's credentials
+   */
+  protected ProxyClient<Ec2Client> proxyClientFor(final AmazonWebServicesClientProxy proxy, final String region) {
+    return TracedProxyClient.wrap(proxy.newProxy(() -> ClientBuilder.getClient(region)), region);
+  }
+
+  /**
+   * Makes one attempt at the additional regions still missing, recorded as a stabilization event
+   * with the attempt's number across invocations, how many regions it called and how many failed.
+   *
+   * @param action what the regional calls do, for the event
+   * @param failures receives the exception of every region whose call failed
+   * @return the result of every region whose call succeeded
+   */
+  protected <T> Map<String, T> invokeRegions(final String action, final Collection<String> regions,
+            final CallbackContext callbackContext, final Function<String, T> call,
+            final Map<String, Exception> failures) {
+        final Object event = regions.isEmpty() ? null : FlightRecorderEvents.beginStabilization();
+        final Map<String, T> results = RegionFanOut.invokeAll(regions, call, failures);
+        FlightRecorderEvents.endStabilization(event, action, callbackContext.getRegionAttempts() + 1, regions.size(),
+                failures.size());
+        return results;
+  }
+
+  /**
+   * Regions that failed for a transient reason are retried in a later invocation, which only
+   * visits the regions still missing; anything else, or running out of attempts, fails the handler.
+   */
+  protected ProgressEvent<ResourceModel, CallbackContext> handleRegionalFailures(
+            final ResourceModel model, final CallbackContext callbackContext, final Map<String, Exception> failures) {
+        callbackContext.setRegionAttempts(callbackContext.getRegionAttempts() + 1);
+        boolean retryable = callbackContext.getRegionAttempts() < MAX_REGION_ATTEMPTS;
+        final StringBuilder message = new StringBuilder();
+        for (final Map.Entry<String, Exception> failure : failures.entrySet()) {
+            retryable &= isRetryable(failure.getValue());
+            message.append(message.length() == 0 ? "" : "; ")
+                    .append(failure.getKey()).append(": ").append(failure.getValue().getMessage());
+        }
+        if (retryable) {
+            return ProgressEvent.defaultInProgressHandler(callbackContext, REGION_RETRY_DELAY_SECONDS, model);
+        }
+        final Map.Entry<String, Exception> first = failures.entrySet().iterator().next();
+        final ProgressEvent<ResourceModel, CallbackContext> failed =
+                handleError(null, first.getValue(), null, model, callbackContext);
+        failed.setMessage(message.toString());
+        return failed;
+    }
+
+  private static boolean isRetryable(final Exception e) {
+        if (e instanceof AwsServiceException) {
+            final AwsServiceException serviceException = (AwsServiceException) e;
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        // client side and connection failures
+        return !(e instanceof BaseHandlerException);
+    }
+
+  protected ProgressEvent<ResourceModel, CallbackContext> validateModel(
+            final ResourceModel model, final CallbackContext callbackContext, final boolean checkRequired) {
+        final String violation;
+        try (Tracing.Span span = Tracing.start("validate", Tracing.SPAN_KIND_INTERNAL)) {
+            violation = ResourceModelValidator.getInstance().validate(model, checkRequired);
+            span.attribute("violation", violation);
+        }
+        if (violation != null) {
+            return ProgressEvent.failed(model, callbackContext, HandlerErrorCode.InvalidRequest, violation);
+        }
+        return ProgressEvent.progress(model, callbackContext);
+    }
 
   protected DescribeKeyPairsResponse getKeyPairsResponse(
             final ProxyClient<Ec2Client> proxyClient) {
@@ -65,17 +188,18 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
         if (e instanceof CfnNotFoundException) {
             return ProgressEvent.failed(resourceModel, callbackContext, HandlerErrorCode.NotFound, e.getMessage());
         }
-        else if (e instanceof LimitExceededException) {
-            return ProgressEvent.failed(resourceModel, callbackContext, HandlerErrorCode.ServiceInternalError, e.getMessage());
+        else if (isLimitExceeded(e)) {
+            return ProgressEvent.failed(resourceModel, callbackContext, HandlerErrorCode.ServiceLimitExceeded, e.getMessage());
         } else if (e instanceof Ec2Exception) {
             Ec2Exception ec2e = (Ec2Exception) e;
-            if (ec2e.awsErrorDetails() != null && ec2e.awsErrorDetails().errorCode()
-                    .equals("InvalidKeyPair.Duplicate"))
-            {
-                ex = new CfnNotFoundException(ResourceModel.TYPE_NAME, request.toString(), e);
-            } else {
-                ex = new CfnInternalFailureException(e);
+            // expected outcomes go straight to a failed event instead of building an exception for its error code
+            if (errorMsgIs(ec2e, KEYPAIR_DUPLICATE_ERROR)) {
+                return ProgressEvent.failed(resourceModel, callbackContext, HandlerErrorCode.AlreadyExists, e.getMessage());
+            }
+            if (errorMsgIs(ec2e, KEYPAIR_NOT_FOUND_ERROR)) {
+                return ProgressEvent.failed(resourceModel, callbackContext, HandlerErrorCode.NotFound, e.getMessage());
             }
+            ex = new CfnInternalFailureException(e);
         } else if (e instanceof ResourceNotFoundException) {
             ex = new CfnNotFoundException(e);
         } else if (e instanceof AwsServiceException) {
@@ -102,7 +226,7 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
     }
   private BaseHandlerException commonHandler(final Exception e) {
         BaseHandlerException ex;
-        if (e instanceof LimitExceededException) {
+        if (isLimitExceeded(e)) {
             ex = new CfnServiceLimitExceededException(e);
         } else if (e instanceof Ec2Exception) {
             ex = new CfnInternalFailureException(e);
@@ -116,14 +240,29 @@ public abstract class BaseHandlerStd extends BaseHandler<CallbackContext> {
         }
         return ex;
     }
-    private boolean errorMsgIs(Ec2Exception e, String msg) {
+    // EC2 reports quotas as error codes such as KeyPairLimitExceeded; RequestLimitExceeded is throttling instead
+    protected static boolean isLimitExceeded(final Exception e) {
+        if (!(e instanceof AwsServiceException)) {
+            return false;
+        }
+        final AwsServiceException serviceException = (AwsServiceException) e;
+        return serviceException.awsErrorDetails() != null && serviceException.awsErrorDetails().errorCode() != null
+                && serviceException.awsErrorDetails().errorCode().endsWith("LimitExceeded")
+                && !serviceException.isThrottlingException();
+    }
+
+    protected static boolean isEmpty(final DescribeKeyPairsResponse response) {
+        return response == null || response.keyPairs().isEmpty();
+    }
+
+    protected boolean errorMsgIs(Ec2Exception e, String msg) {
       return e.awsErrorDetails() != null && e.awsErrorDetails().errorCode().equals(msg);
   }
 
   public RuntimeException handleException(final Exception error, final Ec2Request request) {
     if (error instanceof CfnNotFoundException) {
         return new CfnNotFoundException(ResourceModel.TYPE_NAME, "Resource not found");
-    } if (error instanceof LimitExceededException) {
+    } if (isLimitExceeded(error)) {
         return new CfnServiceLimitExceededException(error);
     } if (error instanceof Ec2Exception) {
         return new CfnInternalFailureException(error);
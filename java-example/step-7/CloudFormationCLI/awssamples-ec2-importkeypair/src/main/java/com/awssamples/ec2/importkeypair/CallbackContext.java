@@ -1,10 +1,84 @@
 package com.awssamples.ec2.importkeypair;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import software.amazon.cloudformation.proxy.StdCallbackContext;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @lombok.Getter
 @lombok.Setter
 @lombok.ToString
 @lombok.EqualsAndHashCode(callSuper = true)
+// the context travels with every re-invocation, so it is written with short names and without empty fields
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class CallbackContext extends StdCallbackContext {
+    // bumped whenever the meaning of the progress fields below changes
+    static final int PROGRESS_VERSION = 1;
+
+    /**
+     * Steps of an update, in the order they run.
+     */
+    public enum Step {
+        READ, DELETE_TAGS, ADD_TAGS, REGIONS
+    }
+
+    // recorded once ImportKeyPair has succeeded, so a re-invoked create reuses the key instead of importing it again
+    @JsonProperty("t")
+    private String clientRequestToken;
+    @JsonProperty("k")
+    private String keyPairId;
+    // progress across the additional regions, so a retried invocation only visits the regions still missing
+    @JsonProperty("rk")
+    private Map<String, String> regionalKeyPairIds = new LinkedHashMap<>();
+    @JsonProperty("cr")
+    private List<String> completedRegions = new ArrayList<>();
+    @JsonProperty("ra")
+    private int regionAttempts;
+    // progress of an update: the steps already done, what the read found and the tag changes derived from it
+    // left at 0 by contexts written before progress was versioned
+    @JsonProperty("v")
+    private int progressVersion;
+    @JsonProperty("s")
+    private List<Step> completedSteps = new ArrayList<>();
+    @JsonProperty("f")
+    private String keyFingerprint;
+    // empty changes are not written either, so these start out empty rather than null
+    @JsonProperty("ct")
+    private Map<String, String> currentTags = new LinkedHashMap<>();
+    @JsonProperty("tr")
+    private List<String> tagsToRemove = new ArrayList<>();
+    @JsonProperty("ta")
+    private Map<String, String> tagsToAdd = new LinkedHashMap<>();
+
+    boolean isCompleted(final Step step) {
+        return completedSteps.contains(step);
+    }
+
+    void complete(final Step step) {
+        if (!completedSteps.contains(step)) {
+            completedSteps.add(step);
+        }
+    }
+
+    /**
+     * Forgets progress recorded under another {@link #PROGRESS_VERSION}, which this code could
+     * resume incorrectly, so the update starts over from the read.
+     */
+    void discardStaleProgress() {
+        if (progressVersion == PROGRESS_VERSION) {
+            return;
+        }
+        completedSteps.clear();
+        keyFingerprint = null;
+        currentTags = new LinkedHashMap<>();
+        tagsToRemove = new ArrayList<>();
+        tagsToAdd = new LinkedHashMap<>();
+        progressVersion = PROGRESS_VERSION;
+    }
 }
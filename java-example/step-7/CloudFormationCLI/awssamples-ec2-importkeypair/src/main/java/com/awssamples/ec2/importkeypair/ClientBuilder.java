@@ -1,14 +1,68 @@
 package com.awssamples.ec2.importkeypair;
 
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.providers.DefaultAwsRegionProviderChain;
 import software.amazon.awssdk.services.ec2.Ec2Client;
-import software.amazon.cloudformation.LambdaWrapper;
+import software.amazon.awssdk.services.ec2.Ec2ClientBuilder;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class ClientBuilder {
+  // points every client at a local stand-in for EC2, for benchmarks and load tests; never set in a deployment
+  static final String ENDPOINT_ENVIRONMENT_VARIABLE = "EC2_ENDPOINT";
+  private static final URI ENDPOINT = parseEndpoint(System.getenv(ENDPOINT_ENVIRONMENT_VARIABLE));
+  // shared by the clients of every region, see HttpTransport for how to select and tune it
+  private static final SdkHttpClient HTTP_CLIENT = HttpTransport.fromEnvironment();
+
+  // the SDK client is thread safe and the proxy injects credentials per request,
+  // so a single client is shared by every invocation in the container
+  private static class LazyHolder {
+    static final Ec2Client CLIENT = builder().build();
+  }
+
+  // clients for the additional regions of a multi-region key pair, built on first use
+  private static final Map<String, Ec2Client> REGIONAL_CLIENTS = new ConcurrentHashMap<>();
+
   public static Ec2Client getClient() {
-    return Ec2Client.builder()
-            .httpClient(LambdaWrapper.HTTP_CLIENT)
-            .build();
+    return LazyHolder.CLIENT;
+  }
+
+  public static Ec2Client getClient(final String region) {
+    return REGIONAL_CLIENTS.computeIfAbsent(region, name -> builder()
+            .region(Region.of(name))
+            .build());
   }
-}
 
+  /**
+   * @return the endpoint the client of the container's own region calls
+   */
+  static URI getEndpoint() {
+    if (ENDPOINT != null) {
+      return ENDPOINT;
+    }
+    // the client builder resolves its region through the same chain
+    final Region region = new DefaultAwsRegionProviderChain().getRegion();
+    return URI.create("https://" + Ec2Client.serviceMetadata().endpointFor(region));
+  }
+
+  static SdkHttpClient getHttpClient() {
+    return HTTP_CLIENT;
+  }
+
+  static URI parseEndpoint(final String value) {
+    return value == null || value.trim().isEmpty() ? null : URI.create(value.trim());
+  }
+
+  private static Ec2ClientBuilder builder() {
+    final Ec2ClientBuilder builder = Ec2Client.builder()
+            .httpClient(HTTP_CLIENT);
+    if (ENDPOINT != null) {
+      builder.endpointOverride(ENDPOINT);
+    }
+    return builder;
+  }
+}
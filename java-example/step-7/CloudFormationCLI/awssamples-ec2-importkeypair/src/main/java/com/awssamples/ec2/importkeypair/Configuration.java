@@ -1,8 +1,22 @@
 package com.awssamples.ec2.importkeypair;
 
+import org.json.JSONObject;
+
 class Configuration extends BaseConfiguration {
+    // the schema is parsed once per container instead of on every invocation
+    private static volatile JSONObject resourceSchema;
 
     public Configuration() {
         super("awssamples-ec2-importkeypair.json");
     }
+
+    @Override
+    public JSONObject resourceSchemaJSONObject() {
+        JSONObject schema = resourceSchema;
+        if (schema == null) {
+            schema = super.resourceSchemaJSONObject();
+            resourceSchema = schema;
+        }
+        return schema;
+    }
 }
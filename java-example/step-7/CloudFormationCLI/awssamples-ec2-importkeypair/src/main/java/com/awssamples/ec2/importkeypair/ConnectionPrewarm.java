@@ -0,0 +1,139 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warms the connection to the EC2 endpoint while the container initialises, so the first call a
+ * user waits on does not also pay for DNS resolution and the TCP and TLS handshakes: resolves the
+ * endpoint and sends it a HEAD request through the shared HTTP client, which keeps the connection
+ * for the first call. Enabled by EC2_PREWARM_CONNECTION; a failure only means the first call warms
+ * the connection itself.
+ *
+ * Either way, the latency of the first EC2 call of the container is written once to the invocation
+ * log as a CloudWatch embedded metric, with a Prewarmed dimension to compare containers with and
+ * without the pre-warm.
+ */
+final class ConnectionPrewarm {
+    static final String ENVIRONMENT_VARIABLE = "EC2_PREWARM_CONNECTION";
+
+    private static final AtomicBoolean FIRST_CALL_PENDING = new AtomicBoolean(true);
+    // null until a pre-warm was attempted
+    private static volatile Result result;
+
+    private ConnectionPrewarm() {
+    }
+
+    /**
+     * Runs during class initialisation of the handlers, which the wrapper creates at container init.
+     */
+    static void atInit() {
+        if (!EmbeddedMetrics.isEnabled(System.getenv(ENVIRONMENT_VARIABLE))) {
+            return;
+        }
+        final URI endpoint;
+        try {
+            endpoint = ClientBuilder.getEndpoint();
+        } catch (final RuntimeException e) {
+            // no region to resolve an endpoint for: the first call will fail on its own
+            result = new Result(false, 0, 0);
+            return;
+        }
+        result = warm(endpoint, ClientBuilder.getHttpClient());
+    }
+
+    /**
+     * @return how long resolving and connecting took, and whether both succeeded
+     */
+    static Result warm(final URI endpoint, final SdkHttpClient httpClient) {
+        final long started = System.nanoTime();
+        long resolved = started;
+        try {
+            InetAddress.getAllByName(endpoint.getHost());
+            resolved = System.nanoTime();
+            final HttpExecuteResponse response = httpClient.prepareRequest(HttpExecuteRequest.builder()
+                    .request(SdkHttpFullRequest.builder()
+                            .method(SdkHttpMethod.HEAD)
+                            .uri(endpoint)
+                            .encodedPath("/")
+                            .build())
+                    .build())
+                    .call();
+            // releases the connection back to the client for the first call
+            final Optional<AbortableInputStream> body = response.responseBody();
+            if (body.isPresent()) {
+                body.get().close();
+            }
+            return new Result(true, millisBetween(started, resolved), millisBetween(resolved, System.nanoTime()));
+        } catch (final IOException | RuntimeException e) {
+            return new Result(false, millisBetween(started, resolved), millisBetween(resolved, System.nanoTime()));
+        }
+    }
+
+    static boolean isFirstCallPending() {
+        return FIRST_CALL_PENDING.get();
+    }
+
+    /**
+     * Writes the first-call metric for the first EC2 call of the container, and does nothing after.
+     */
+    static void recordFirstCall(final String operation, final long latencyNanos) {
+        if (FIRST_CALL_PENDING.compareAndSet(true, false)) {
+            EmbeddedMetrics.write(metricLine(result, operation, TimeUnit.NANOSECONDS.toMillis(latencyNanos),
+                    System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @param result the pre-warm, null if there was none
+     * @return a single line of CloudWatch embedded metric format
+     */
+    static String metricLine(final Result result, final String operation, final long latencyMillis,
+            final long timestamp) {
+        final boolean prewarmed = result != null && result.succeeded;
+        final StringBuilder line = new StringBuilder()
+                .append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"").append(EmbeddedMetrics.NAMESPACE)
+                .append("\",\"Dimensions\":[[\"Prewarmed\"]],\"Metrics\":[")
+                .append("{\"Name\":\"FirstEc2CallLatency\",\"Unit\":\"Milliseconds\"}");
+        if (result != null) {
+            line.append(",{\"Name\":\"PrewarmResolveLatency\",\"Unit\":\"Milliseconds\"}")
+                    .append(",{\"Name\":\"PrewarmConnectLatency\",\"Unit\":\"Milliseconds\"}");
+        }
+        line.append("]}]},\"Prewarmed\":\"").append(prewarmed)
+                .append("\",\"Operation\":\"").append(operation)
+                .append("\",\"FirstEc2CallLatency\":").append(latencyMillis);
+        if (result != null) {
+            line.append(",\"PrewarmResolveLatency\":").append(result.resolveMillis)
+                    .append(",\"PrewarmConnectLatency\":").append(result.connectMillis);
+        }
+        return line.append('}').toString();
+    }
+
+    private static long millisBetween(final long fromNanos, final long toNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(toNanos - fromNanos);
+    }
+
+    static final class Result {
+        final boolean succeeded;
+        final long resolveMillis;
+        final long connectMillis;
+
+        Result(final boolean succeeded, final long resolveMillis, final long connectMillis) {
+            this.succeeded = succeeded;
+            this.resolveMillis = resolveMillis;
+            this.connectMillis = connectMillis;
+        }
+    }
+}
@@ -1,48 +1,174 @@
 package com.awssamples.ec2.importkeypair;
 
 import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
 import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 import software.amazon.cloudformation.proxy.*;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 public class CreateHandler extends BaseHandlerStd {
-    private Logger logger;
 
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(final AmazonWebServicesClientProxy proxy,
             final ResourceHandlerRequest<ResourceModel> request, final CallbackContext callbackContext,
             final ProxyClient<Ec2Client> proxyClient, final Logger logger) {
 
-        this.logger = logger;
-
         final ResourceModel model = request.getDesiredResourceState();
 
-        return ProgressEvent.progress(request.getDesiredResourceState(), callbackContext)
-                .then(progress -> createKeyPair(proxy, proxyClient, model, callbackContext));
+        final ProgressEvent<ResourceModel, CallbackContext> validated = ProgressEvent
+                .progress(request.getDesiredResourceState(), callbackContext)
+                .then(progress -> validateModel(model, callbackContext, true));
+        // a create whose response was lost imports again and adopts the key through the duplicate error,
+        // so only a retry of the additional regions resumes from the key recorded in the context
+        final ProgressEvent<ResourceModel, CallbackContext> imported = isImported(request, callbackContext)
+                ? validated.then(Tracing.stage("AWS-EC2-KeyPair::Create::Reuse",
+                        progress -> reuseImportedKeyPair(proxyClient, model, callbackContext, logger)))
+                : validated.then(Tracing.stage("AWS-EC2-KeyPair::Create",
+                        progress -> createKeyPair(proxy, proxyClient, request, model, callbackContext, logger)));
+        return imported
+                .then(Tracing.stage("AWS-EC2-KeyPair::Create::Regions",
+                        progress -> importToRegions(proxy, request, model, callbackContext, logger)))
+                .then(progress -> ProgressEvent.defaultSuccessHandler(model));
+    }
+
+    private static boolean isImported(final ResourceHandlerRequest<ResourceModel> request,
+            final CallbackContext callbackContext) {
+        return callbackContext.getKeyPairId() != null
+                && Objects.equals(callbackContext.getClientRequestToken(), request.getClientRequestToken());
+    }
+
+    /**
+     * An earlier invocation of this request already imported the key and left regions to retry;
+     * confirm it is still there and finish with it rather than calling ImportKeyPair a second time.
+     */
+    private ProgressEvent<ResourceModel, CallbackContext> reuseImportedKeyPair(
+            final ProxyClient<Ec2Client> proxyClient, final ResourceModel model, final CallbackContext context,
+            final Logger logger) {
+        model.setKeyPairId(context.getKeyPairId());
+        final DescribeKeyPairsResponse describeKeyPairsResponse;
+        try {
+            describeKeyPairsResponse = getKeyPairsResponse(Translator.translateToReadRequest(model), proxyClient);
+        } catch (final Exception e) {
+            return handleError(null, e, proxyClient, model, context);
+        }
+        if (isEmpty(describeKeyPairsResponse)) {
+            return ProgressEvent.failed(model, context, HandlerErrorCode.NotFound, KEYPAIR_NOT_FOUND_MESSAGE);
+        }
+        model.setKeyFingerprint(describeKeyPairsResponse.keyPairs().get(0).keyFingerprint());
+        logger.log(String.format("%s %s was imported by an earlier invocation, reusing it.",
+                ResourceModel.TYPE_NAME, context.getKeyPairId()));
+        return ProgressEvent.progress(model, context);
+    }
+
+    /**
+     * Imports the key into the additional regions that do not have it yet, all at once.
+     */
+    private ProgressEvent<ResourceModel, CallbackContext> importToRegions(final AmazonWebServicesClientProxy proxy,
+            final ResourceHandlerRequest<ResourceModel> request, final ResourceModel model,
+            final CallbackContext context, final Logger logger) {
+        final List<String> pending = new ArrayList<>();
+        for (final String region : RegionFanOut.additionalRegions(model, request.getRegion())) {
+            if (!context.getRegionalKeyPairIds().containsKey(region)) {
+                pending.add(region);
+            }
+        }
+        final Map<String, Exception> failures = new LinkedHashMap<>();
+        context.getRegionalKeyPairIds().putAll(invokeRegions("AWSSamples-EC2-ImportKeyPair::Create::Regions", pending,
+                context, region -> importToRegion(proxyClientFor(proxy, region), model, region, logger), failures));
+        model.setRegionalKeyPairIds(RegionFanOut.toModel(context.getRegionalKeyPairIds()));
+        return failures.isEmpty() ? ProgressEvent.progress(model, context)
+                : handleRegionalFailures(model, context, failures);
+    }
+
+    private String importToRegion(final ProxyClient<Ec2Client> proxyClient, final ResourceModel model,
+            final String region, final Logger logger) {
+        try {
+            final String keyPairId = proxyClient.injectCredentialsAndInvokeV2(Translator.translateToCreateRequest(model),
+                    proxyClient.client()::importKeyPair).keyPairId();
+            logger.log(String.format("%s %s imported into %s.", ResourceModel.TYPE_NAME, keyPairId, region));
+            return keyPairId;
+        } catch (final Ec2Exception e) {
+            // also covers an earlier attempt whose import succeeded but whose response was lost
+            if (!errorMsgIs(e, KEYPAIR_DUPLICATE_ERROR)) {
+                throw e;
+            }
+            return adoptExistingKeyPair(proxyClient, model, e, logger).keyPairId();
+        }
     }
 
     private ProgressEvent<ResourceModel, CallbackContext> createKeyPair(final AmazonWebServicesClientProxy proxy,
-            final ProxyClient<Ec2Client> proxyClient, final ResourceModel model, final CallbackContext context) {
+            final ProxyClient<Ec2Client> proxyClient, final ResourceHandlerRequest<ResourceModel> request,
+            final ResourceModel model, final CallbackContext context, final Logger logger) {
         return proxy.initiate("AWS-EC2-KeyPair::Create", proxyClient, model, context)
-                .translateToServiceRequest(Translator::translateToCreateRequest)
-                .makeServiceCall((importKeyPairRequest, client) -> {
+                .translateToServiceRequest(Tracing.translateToServiceRequest("AWS-EC2-KeyPair::Create",
+                        Translator::translateToCreateRequest))
+                .makeServiceCall(Tracing.makeServiceCall("AWS-EC2-KeyPair::Create", (importKeyPairRequest, client) -> {
                     ImportKeyPairResponse importKeyPairResponse = null;
-                
+                    try {
                         importKeyPairResponse = proxyClient.injectCredentialsAndInvokeV2(importKeyPairRequest,
                                 proxyClient.client()::importKeyPair);
+                    } catch (final Ec2Exception e) {
+                        if (!errorMsgIs(e, KEYPAIR_DUPLICATE_ERROR)) {
+                            throw e;
+                        }
+                        return adoptExistingKeyPair(proxyClient, model, e, logger);
+                    }
                     logger.log(String.format("%s request successfully created. Awaiting accept.",
                             ResourceModel.TYPE_NAME));
                     return importKeyPairResponse;
-                })
-                .stabilize((importKeyPairRequest, importKeyPairResponse, cbProxyClient, resourceModel,
-                        pcontext) -> stabilizeOnCreate(logger, importKeyPairResponse, cbProxyClient, resourceModel))
-                .handleError(this::handleError)
+                }))
+                .stabilize(Tracing.stabilize("AWS-EC2-KeyPair::Create",
+                        (importKeyPairRequest, importKeyPairResponse, cbProxyClient, resourceModel, pcontext) ->
+                                recordImportedKeyPair(importKeyPairResponse, resourceModel, pcontext, request)))
+                .handleError(Tracing.handleError("AWS-EC2-KeyPair::Create", this::handleError))
+                .progress();
+    }
 
-                .success();
+    /**
+     * A key with this name already exists, typically from a retried or re-run stack. When it holds
+     * the submitted material it is adopted, so the create succeeds without a rollback; otherwise the
+     * duplicate error is rethrown and reported as AlreadyExists.
+     */
+    private ImportKeyPairResponse adoptExistingKeyPair(final ProxyClient<Ec2Client> proxyClient,
+            final ResourceModel model, final Ec2Exception duplicate, final Logger logger) {
+        final DescribeKeyPairsResponse describeKeyPairsResponse = getKeyPairsResponse(
+                Translator.translateToReadByNameRequest(model), proxyClient);
+        if (isEmpty(describeKeyPairsResponse)) {
+            throw duplicate;
+        }
+        final KeyPairInfo existing = describeKeyPairsResponse.keyPairs().get(0);
+        if (!KeyMaterialHelper.hasFingerprint(model.getPublicKeyMaterial(), existing.keyFingerprint())) {
+            throw duplicate;
+        }
+        // the import would have tagged the key, so tag the adopted one the same way
+        if (model.getTags() != null && !model.getTags().isEmpty()) {
+            proxyClient.injectCredentialsAndInvokeV2(
+                    Translator.translateToAddTagsRequest(existing.keyPairId(), model.getTags()),
+                    proxyClient.client()::createTags);
+        }
+        logger.log(String.format("%s %s already exists with the same key material, adopting it.",
+                ResourceModel.TYPE_NAME, existing.keyPairId()));
+        return ImportKeyPairResponse.builder()
+                .keyName(existing.keyName())
+                .keyPairId(existing.keyPairId())
+                .keyFingerprint(existing.keyFingerprint())
+                .build();
     }
 
-    private Boolean stabilizeOnCreate(Logger logger, ImportKeyPairResponse importKeyPairResponse,
-            ProxyClient<Ec2Client> cbProxyClient, ResourceModel model) {
+    private static Boolean recordImportedKeyPair(final ImportKeyPairResponse importKeyPairResponse,
+            final ResourceModel model, final CallbackContext context,
+            final ResourceHandlerRequest<ResourceModel> request) {
         model.setKeyPairId(importKeyPairResponse.keyPairId());
         model.setKeyFingerprint(importKeyPairResponse.keyFingerprint());
+        context.setKeyPairId(importKeyPairResponse.keyPairId());
+        context.setClientRequestToken(request.getClientRequestToken());
+        NotFoundCache.getInstance().clear(request, importKeyPairResponse.keyPairId());
         return true;
     }
 }
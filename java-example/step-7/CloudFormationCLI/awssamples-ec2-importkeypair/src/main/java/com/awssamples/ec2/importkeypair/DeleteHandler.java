@@ -1,9 +1,9 @@
 package com.awssamples.ec2.importkeypair;
 
-import com.amazonaws.util.StringUtils;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.DeleteKeyPairRequest;
 import software.amazon.awssdk.services.ec2.model.DeleteKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
 import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.Logger;
@@ -11,8 +11,13 @@ import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
 import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class DeleteHandler extends BaseHandlerStd {
-    private Logger logger;
+    private static final ReadHandler READ_HANDLER = new ReadHandler();
 
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(
             final AmazonWebServicesClientProxy proxy,
@@ -21,34 +26,76 @@ public class DeleteHandler extends BaseHandlerStd {
             final ProxyClient<Ec2Client> proxyClient,
             final Logger logger) {
 
-        this.logger = logger;
-
         final ResourceModel model = request.getDesiredResourceState();
 
-        if (StringUtils.isNullOrEmpty(model.getKeyPairId())) {
+        if (model.getKeyPairId() == null || model.getKeyPairId().isEmpty()) {
             return ProgressEvent
-                    .failed(model, callbackContext, HandlerErrorCode.NotFound, "Keypair not found");
+                    .failed(model, callbackContext, HandlerErrorCode.NotFound, KEYPAIR_NOT_FOUND_MESSAGE);
         }
 
         return ProgressEvent.progress(request.getDesiredResourceState(), callbackContext)
-                .then(progress->new ReadHandler().handleRequest(proxy, request, callbackContext, proxyClient, logger))
-                .onSuccess(progress -> proxy.initiate("AWSSamples-EC2-ImportKeyPair::Delete", proxyClient, model, callbackContext)
-                    .translateToServiceRequest(Translator::translateToDeleteRequest)
-                    .makeServiceCall(this::deleteResource)
-                    .progress()
+                // the additional regions go first, so a retry still finds the primary key pair
+                .then(Tracing.stage("AWSSamples-EC2-ImportKeyPair::Delete::Regions",
+                        progress -> deleteFromRegions(proxy, request, model, callbackContext, logger)))
+                .then(progress->READ_HANDLER.handleRequest(proxy, request, callbackContext, proxyClient, logger))
+                .onSuccess(Tracing.stage("AWSSamples-EC2-ImportKeyPair::Delete",
+                    progress -> proxy.initiate("AWSSamples-EC2-ImportKeyPair::Delete", proxyClient, model, callbackContext)
+                    .translateToServiceRequest(Tracing.translateToServiceRequest(
+                            "AWSSamples-EC2-ImportKeyPair::Delete", Translator::translateToDeleteRequest))
+                    .makeServiceCall(Tracing.makeServiceCall("AWSSamples-EC2-ImportKeyPair::Delete",
+                            this::deleteResource))
+                    .handleError(Tracing.handleError("AWSSamples-EC2-ImportKeyPair::Delete", this::handleError))
+                    .done(deleteKeyPairResponse -> {
+                        NotFoundCache.getInstance().markMissing(request, model.getKeyPairId());
+                        return ProgressEvent.progress(model, callbackContext);
+                    }))
                 )
                 .then(progress -> ProgressEvent.defaultSuccessHandler(null));
     }
     
+    private ProgressEvent<ResourceModel, CallbackContext> deleteFromRegions(final AmazonWebServicesClientProxy proxy,
+            final ResourceHandlerRequest<ResourceModel> request, final ResourceModel model,
+            final CallbackContext context, final Logger logger) {
+        final Map<String, String> keyPairIds = RegionFanOut.fromModel(model.getRegionalKeyPairIds());
+        final List<String> pending = new ArrayList<>();
+        for (final String region : RegionFanOut.additionalRegions(model, request.getRegion())) {
+            if (!context.getCompletedRegions().contains(region)) {
+                pending.add(region);
+            }
+        }
+        final Map<String, Exception> failures = new LinkedHashMap<>();
+        context.getCompletedRegions().addAll(invokeRegions("AWSSamples-EC2-ImportKeyPair::Delete::Regions", pending,
+                context,
+                region -> deleteFromRegion(proxyClientFor(proxy, region), model, region, keyPairIds.get(region), logger),
+                failures).keySet());
+        return failures.isEmpty() ? ProgressEvent.progress(model, context)
+                : handleRegionalFailures(model, context, failures);
+    }
+
+    private DeleteKeyPairResponse deleteFromRegion(final ProxyClient<Ec2Client> proxyClient, final ResourceModel model,
+            final String region, final String keyPairId, final Logger logger) {
+        // without a recorded id the key pair is deleted by name
+        final DeleteKeyPairRequest deleteKeyPairRequest = keyPairId != null
+                ? Translator.translateToDeleteRequest(Translator.translateToRegionalModel(model, keyPairId))
+                : DeleteKeyPairRequest.builder().keyName(model.getKeyName()).build();
+        try {
+            final DeleteKeyPairResponse deleteKeyPairResponse = proxyClient.injectCredentialsAndInvokeV2(
+                    deleteKeyPairRequest, proxyClient.client()::deleteKeyPair);
+            logger.log(String.format("%s deleted from %s.", ResourceModel.TYPE_NAME, region));
+            return deleteKeyPairResponse;
+        } catch (final Ec2Exception e) {
+            // already gone is as good as deleted
+            if (!errorMsgIs(e, KEYPAIR_NOT_FOUND_ERROR)) {
+                throw e;
+            }
+            return DeleteKeyPairResponse.builder().build();
+        }
+    }
+
     private DeleteKeyPairResponse deleteResource(
             DeleteKeyPairRequest getRequest,
             final ProxyClient<Ec2Client> proxyClient) {
-        DeleteKeyPairResponse response = null;
-        try {
-            response = proxyClient.injectCredentialsAndInvokeV2(getRequest, proxyClient.client()::deleteKeyPair);
-        } catch (final Exception e) {
-            throw handleException(e, getRequest);
-        }
-        return response;
+        // failures are mapped to failed events by handleError rather than rethrown
+        return proxyClient.injectCredentialsAndInvokeV2(getRequest, proxyClient.client()::deleteKeyPair);
     }
 }
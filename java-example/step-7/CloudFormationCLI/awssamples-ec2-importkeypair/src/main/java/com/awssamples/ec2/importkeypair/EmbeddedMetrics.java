@@ -0,0 +1,68 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.cloudformation.proxy.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes CloudWatch embedded metric format lines to the log of the invocation in progress, where
+ * CloudWatch Logs extracts the metrics, and parses the flags that turn the optional metrics on.
+ * Invocations may run side by side, so each thread writes to the logger of the invocation it works
+ * for; a line written outside any invocation is discarded.
+ */
+final class EmbeddedMetrics {
+    static final String NAMESPACE = "AWSSamples/EC2ImportKeyPair";
+
+    private static final ThreadLocal<Logger> LOGGER = new ThreadLocal<>();
+
+    private EmbeddedMetrics() {
+    }
+
+    /**
+     * @param logger the logger of the invocation this thread now works for, null when it is done
+     * @return the logger the thread wrote to before, to hand back here once the work is done
+     */
+    static Logger logTo(final Logger logger) {
+        final Logger previous = LOGGER.get();
+        if (logger != null) {
+            LOGGER.set(logger);
+        } else {
+            LOGGER.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * @return the logger to hand to work that continues on another thread, see {@link #callWithLogger}
+     */
+    static Logger logger() {
+        return LOGGER.get();
+    }
+
+    /**
+     * Runs the call with its metric lines written to the given logger.
+     */
+    static <T> T callWithLogger(final Logger logger, final Callable<T> call) throws Exception {
+        final Logger previous = logTo(logger);
+        try {
+            return call.call();
+        } finally {
+            logTo(previous);
+        }
+    }
+
+    /**
+     * @param line a single line of CloudWatch embedded metric format
+     */
+    static void write(final String line) {
+        final Logger logger = LOGGER.get();
+        if (logger != null) {
+            logger.log(line);
+        }
+    }
+
+    static boolean isEnabled(final String value) {
+        return value != null && "true".equals(value.trim().toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,72 @@
+package com.awssamples.ec2.importkeypair;
+
+/**
+ * Emits the handler's Java Flight Recorder events, so a recording taken during a load test can
+ * attribute CPU and allocation samples to handler phases. Each phase is bracketed by a begin call,
+ * which returns null when the JVM has no flight recorder or no recording wants the event, and an
+ * end call that commits the event with what the phase found. Callers never touch jdk.jfr types,
+ * so the handlers still load on a JVM without it.
+ */
+final class FlightRecorderEvents {
+    static final boolean AVAILABLE = isAvailable();
+
+    private FlightRecorderEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    static Object beginInvocation() {
+        return AVAILABLE ? JfrEvents.beginInvocation() : null;
+    }
+
+    static void endInvocation(final Object event, final String handler, final String keyPairId, final String status,
+            final String errorCode) {
+        if (event != null) {
+            JfrEvents.endInvocation(event, handler, keyPairId, status, errorCode);
+        }
+    }
+
+    /** @return whether a recording wants EC2 call events, checked once per invocation */
+    static boolean isEc2CallEnabled() {
+        return AVAILABLE && JfrEvents.isEc2CallEnabled();
+    }
+
+    static Object beginEc2Call() {
+        return AVAILABLE ? JfrEvents.beginEc2Call() : null;
+    }
+
+    static void endEc2Call(final Object event, final String operation, final String region, final int attempt,
+            final String errorCode) {
+        if (event != null) {
+            JfrEvents.endEc2Call(event, operation, region, attempt, errorCode);
+        }
+    }
+
+    static Object beginTranslation() {
+        return AVAILABLE ? JfrEvents.beginTranslation() : null;
+    }
+
+    static void endTranslation(final Object event, final String method) {
+        if (event != null) {
+            JfrEvents.endTranslation(event, method);
+        }
+    }
+
+    static Object beginStabilization() {
+        return AVAILABLE ? JfrEvents.beginStabilization() : null;
+    }
+
+    static void endStabilization(final Object event, final String action, final int attempt, final int regions,
+            final int failedRegions) {
+        if (event != null) {
+            JfrEvents.endStabilization(event, action, attempt, regions, failedRegions);
+        }
+    }
+}
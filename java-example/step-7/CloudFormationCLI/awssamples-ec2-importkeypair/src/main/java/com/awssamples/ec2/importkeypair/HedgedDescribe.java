@@ -0,0 +1,326 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hedges DescribeKeyPairs: when a describe has not returned within the configured percentile of
+ * recent describe latencies, sends the same describe again. Describes are idempotent, so the only
+ * cost of a hedge is the extra call, and a budget that every describe tops up by a small fraction
+ * caps hedges at that fraction of traffic, so a slow EC2 is never answered with twice the load.
+ * Until enough latencies have been seen, nothing is hedged.
+ *
+ * While the budget holds a hedge, the first attempt is made on a pool thread and the caller waits
+ * for whichever attempt succeeds first, leaving the other to finish on its own; otherwise the
+ * caller makes the describe itself, so a describe that cannot be hedged takes no thread hop.
+ *
+ * Enabled by EC2_HEDGE_DESCRIBE. Every hedge writes a CloudWatch embedded metric line counting it
+ * as issued and, if its answer was used, as won.
+ */
+final class HedgedDescribe {
+    static final String ENVIRONMENT_VARIABLE = "EC2_HEDGE_DESCRIBE";
+    static final String PERCENTILE_ENVIRONMENT_VARIABLE = "EC2_HEDGE_PERCENTILE";
+    static final String BUDGET_ENVIRONMENT_VARIABLE = "EC2_HEDGE_BUDGET_PERCENT";
+    static final double DEFAULT_PERCENTILE = 95;
+    static final double DEFAULT_BUDGET_PERCENT = 5;
+    // latencies the threshold is taken from, and how many must be seen before hedging starts
+    static final int WINDOW = 512;
+    static final int MIN_SAMPLES = 64;
+    private static final int RECOMPUTE_EVERY = 16;
+    // the budget is kept in thousandths of a hedge; unused budget is capped at a burst of ten hedges
+    private static final long HEDGE_COST = 1000;
+    private static final long MAX_BALANCE = 10 * HEDGE_COST;
+
+    private static final HedgedDescribe INSTANCE = new HedgedDescribe(
+            EmbeddedMetrics.isEnabled(System.getenv(ENVIRONMENT_VARIABLE)),
+            parsePercent(System.getenv(PERCENTILE_ENVIRONMENT_VARIABLE), DEFAULT_PERCENTILE, 50, 99.9),
+            parsePercent(System.getenv(BUDGET_ENVIRONMENT_VARIABLE), DEFAULT_BUDGET_PERCENT, 0, 50),
+            Executors.newCachedThreadPool(runnable -> daemon(runnable, "describe-hedge")),
+            Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "describe-hedge-timer")),
+            EmbeddedMetrics::write);
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long deposit;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<String> metrics;
+
+    // guarded by this
+    private final long[] latencies = new long[WINDOW];
+    private int next;
+    private int samples;
+    private int sinceRecompute;
+    private volatile long thresholdNanos;
+
+    private final AtomicLong balance = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    /**
+     * @param percentile of recent latencies a describe may take before it is hedged
+     * @param budgetPercent of describes that may be hedged
+     * @param executor makes the attempts of describes that may be hedged
+     * @param scheduler starts hedges when their threshold runs out
+     * @param metrics receives a metric line for every hedge, on the caller's thread
+     */
+    HedgedDescribe(final boolean enabled, final double percentile, final double budgetPercent,
+            final Executor executor, final ScheduledExecutorService scheduler, final Consumer<String> metrics) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.deposit = Math.round(budgetPercent / 100 * HEDGE_COST);
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    static HedgedDescribe getInstance() {
+        return INSTANCE;
+    }
+
+    static double parsePercent(final String value, final double defaultValue, final double min, final double max) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            final double parsed = Double.parseDouble(value.trim());
+            return parsed >= min && parsed <= max ? parsed : defaultValue;
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param describe the describe to make, on whichever thread, as often as it is hedged
+     * @return the answer of the first attempt to succeed
+     */
+    <V> V call(final Supplier<V> describe) {
+        if (!enabled) {
+            return describe.get();
+        }
+        calls.incrementAndGet();
+        balance.updateAndGet(current -> Math.min(MAX_BALANCE, current + deposit));
+        final long threshold = thresholdNanos;
+        if (threshold == 0) {
+            return timed(describe);
+        }
+        if (balance.get() < HEDGE_COST) {
+            // no hedge to spend: count the describe as denied if it turns out slow enough to have wanted one
+            final long started = System.nanoTime();
+            final V value = timed(describe);
+            if (System.nanoTime() - started > threshold) {
+                hedgesDenied.incrementAndGet();
+            }
+            return value;
+        }
+
+        final long started = System.nanoTime();
+        final Attempts<V> attempts = new Attempts<>(describe);
+        executor.execute(() -> attempts.attempt(false));
+        final ScheduledFuture<?> timer = scheduler.schedule(() -> executor.execute(attempts::hedge),
+                threshold, TimeUnit.NANOSECONDS);
+        Answer<V> answer = null;
+        try {
+            answer = await(attempts.first);
+            return answer.value;
+        } finally {
+            timer.cancel(false);
+            if (attempts.close()) {
+                final boolean won = answer != null && answer.hedge;
+                if (won) {
+                    hedgesWon.incrementAndGet();
+                }
+                metrics.accept(metricLine(won, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+                        System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /** @return how many describes went through while hedging was enabled */
+    long calls() {
+        return calls.get();
+    }
+
+    /** @return how many describes were hedged */
+    long hedges() {
+        return hedges.get();
+    }
+
+    /** @return how many hedges answered first */
+    long hedgesWon() {
+        return hedgesWon.get();
+    }
+
+    /** @return how many describes were not hedged for lack of budget although they were slow */
+    long hedgesDenied() {
+        return hedgesDenied.get();
+    }
+
+    /** @return how long a describe may take before it is hedged, 0 while too few latencies were seen */
+    long thresholdNanos() {
+        return thresholdNanos;
+    }
+
+    synchronized void record(final long latencyNanos) {
+        latencies[next] = latencyNanos;
+        next = (next + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+        sinceRecompute++;
+        if (samples >= MIN_SAMPLES && sinceRecompute >= RECOMPUTE_EVERY) {
+            sinceRecompute = 0;
+            final long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            thresholdNanos = Math.max(1, sorted[Math.max(0, index)]);
+        }
+    }
+
+    static String metricLine(final boolean won, final long latencyMillis, final long timestamp) {
+        return "{\"_aws\":{\"Timestamp\":" + timestamp
+                + ",\"CloudWatchMetrics\":[{\"Namespace\":\"" + EmbeddedMetrics.NAMESPACE
+                + "\",\"Dimensions\":[[\"Operation\"]],\"Metrics\":["
+                + "{\"Name\":\"HedgesIssued\",\"Unit\":\"Count\"},"
+                + "{\"Name\":\"HedgesWon\",\"Unit\":\"Count\"},"
+                + "{\"Name\":\"HedgedCallLatency\",\"Unit\":\"Milliseconds\"}]}]},"
+                + "\"Operation\":\"DescribeKeyPairs\",\"HedgesIssued\":1,\"HedgesWon\":" + (won ? 1 : 0)
+                + ",\"HedgedCallLatency\":" + latencyMillis + "}";
+    }
+
+    private <V> V timed(final Supplier<V> describe) {
+        final long started = System.nanoTime();
+        final V value = describe.get();
+        record(System.nanoTime() - started);
+        return value;
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            final long current = balance.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    private static <V> V await(final CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException unwrap(final Throwable cause) {
+        final Throwable error = cause instanceof CompletionException && cause.getCause() != null
+                ? cause.getCause() : cause;
+        if (error instanceof RuntimeException) {
+            return (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new IllegalStateException(error);
+    }
+
+    private static Thread daemon(final Runnable runnable, final String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * The first attempt and the hedge of one describe, which settle one answer between them: the
+     * first success answers, and a failure answers once no other attempt is out or can go out.
+     */
+    private final class Attempts<V> {
+        private final Supplier<V> describe;
+        final CompletableFuture<Answer<V>> first = new CompletableFuture<>();
+        // guarded by this
+        private boolean closed;
+        private boolean issued;
+        private int failures;
+        private Throwable failure;
+
+        Attempts(final Supplier<V> describe) {
+            this.describe = describe;
+        }
+
+        /**
+         * Sends the hedge when its threshold ran out, unless the describe was answered or the budget is spent.
+         */
+        void hedge() {
+            synchronized (this) {
+                if (closed || first.isDone()) {
+                    return;
+                }
+                issued = withdraw();
+            }
+            if (!issued) {
+                hedgesDenied.incrementAndGet();
+                return;
+            }
+            hedges.incrementAndGet();
+            attempt(true);
+        }
+
+        void attempt(final boolean hedge) {
+            try {
+                succeed(timed(describe), hedge);
+            } catch (final RuntimeException | Error e) {
+                fail(e, hedge);
+            }
+        }
+
+        /**
+         * Called by the caller once it has its answer.
+         *
+         * @return whether the hedge went out; if not, it never will
+         */
+        synchronized boolean close() {
+            closed = true;
+            return issued;
+        }
+
+        private synchronized void succeed(final V value, final boolean hedge) {
+            first.complete(new Answer<>(value, hedge));
+        }
+
+        private synchronized void fail(final Throwable error, final boolean hedge) {
+            // the first attempt's failure is the one reported when both fail
+            if (failure == null || !hedge) {
+                failure = error;
+            }
+            if (++failures == (issued ? 2 : 1)) {
+                first.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static final class Answer<V> {
+        final V value;
+        final boolean hedge;
+
+        Answer(final V value, final boolean hedge) {
+            this.value = value;
+            this.hedge = hedge;
+        }
+    }
+}
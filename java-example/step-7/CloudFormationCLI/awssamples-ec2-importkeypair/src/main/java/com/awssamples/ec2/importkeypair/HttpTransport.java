@@ -0,0 +1,103 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.cloudformation.LambdaWrapper;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * The HTTP client the EC2 clients send their calls through. By default that is the wrapper's
+ * shared client; EC2_HTTP_CLIENT selects a client of our own instead, tuned by the settings below.
+ * Unset or unparseable settings keep the SDK's defaults. TLS sessions are reused by the JVM's
+ * session cache with every client.
+ */
+enum HttpTransport {
+    /** The wrapper's Apache client, shared with the wrapper's own calls; the settings do not apply. */
+    WRAPPER,
+    /** An Apache client of our own: a connection pool, with every setting below. */
+    APACHE,
+    /** The JDK's HttpURLConnection: fewer classes to load, connections kept alive by the JDK. */
+    URL_CONNECTION;
+
+    static final String ENVIRONMENT_VARIABLE = "EC2_HTTP_CLIENT";
+    static final String MAX_CONNECTIONS_ENVIRONMENT_VARIABLE = "EC2_HTTP_MAX_CONNECTIONS";
+    static final String CONNECTION_TIMEOUT_ENVIRONMENT_VARIABLE = "EC2_HTTP_CONNECTION_TIMEOUT_MILLIS";
+    static final String SOCKET_TIMEOUT_ENVIRONMENT_VARIABLE = "EC2_HTTP_SOCKET_TIMEOUT_MILLIS";
+    // how long a pooled connection may sit idle before it is closed instead of reused
+    static final String MAX_IDLE_ENVIRONMENT_VARIABLE = "EC2_HTTP_CONNECTION_MAX_IDLE_MILLIS";
+    static final String TCP_KEEP_ALIVE_ENVIRONMENT_VARIABLE = "EC2_HTTP_TCP_KEEP_ALIVE";
+
+    static HttpTransport parse(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return WRAPPER;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (final IllegalArgumentException e) {
+            return WRAPPER;
+        }
+    }
+
+    static SdkHttpClient fromEnvironment() {
+        return parse(System.getenv(ENVIRONMENT_VARIABLE)).create(System::getenv);
+    }
+
+    /**
+     * @param settings looks up the settings by environment variable name
+     * @return the client to hand to every EC2 client builder
+     */
+    SdkHttpClient create(final Function<String, String> settings) {
+        final Integer maxConnections = parsePositive(settings.apply(MAX_CONNECTIONS_ENVIRONMENT_VARIABLE));
+        final Integer connectionTimeout = parsePositive(settings.apply(CONNECTION_TIMEOUT_ENVIRONMENT_VARIABLE));
+        final Integer socketTimeout = parsePositive(settings.apply(SOCKET_TIMEOUT_ENVIRONMENT_VARIABLE));
+        final Integer maxIdle = parsePositive(settings.apply(MAX_IDLE_ENVIRONMENT_VARIABLE));
+        final String tcpKeepAlive = settings.apply(TCP_KEEP_ALIVE_ENVIRONMENT_VARIABLE);
+        switch (this) {
+            case APACHE:
+                final ApacheHttpClient.Builder apache = ApacheHttpClient.builder();
+                if (maxConnections != null) {
+                    apache.maxConnections(maxConnections);
+                }
+                if (connectionTimeout != null) {
+                    apache.connectionTimeout(Duration.ofMillis(connectionTimeout));
+                }
+                if (socketTimeout != null) {
+                    apache.socketTimeout(Duration.ofMillis(socketTimeout));
+                }
+                if (maxIdle != null) {
+                    apache.connectionMaxIdleTime(Duration.ofMillis(maxIdle));
+                }
+                if (tcpKeepAlive != null && !tcpKeepAlive.trim().isEmpty()) {
+                    apache.tcpKeepAlive(Boolean.parseBoolean(tcpKeepAlive.trim()));
+                }
+                return apache.build();
+            case URL_CONNECTION:
+                final UrlConnectionHttpClient.Builder urlConnection = UrlConnectionHttpClient.builder();
+                if (connectionTimeout != null) {
+                    urlConnection.connectionTimeout(Duration.ofMillis(connectionTimeout));
+                }
+                if (socketTimeout != null) {
+                    urlConnection.socketTimeout(Duration.ofMillis(socketTimeout));
+                }
+                return urlConnection.build();
+            default:
+                return LambdaWrapper.HTTP_CLIENT;
+        }
+    }
+
+    private static Integer parsePositive(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            final int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : null;
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.awssamples.ec2.importkeypair;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The event types behind {@link FlightRecorderEvents}; only loaded once a flight recorder is known
+ * to be there.
+ */
+final class JfrEvents {
+    private static final EventType EC2_CALL = EventType.getEventType(Ec2Call.class);
+
+    private JfrEvents() {
+    }
+
+    @Name(Invocation.NAME)
+    @Label("Handler Invocation")
+    @Category({"AWSSamples", "EC2 ImportKeyPair"})
+    @StackTrace(false)
+    static final class Invocation extends Event {
+        static final String NAME = "com.awssamples.ec2.importkeypair.Invocation";
+
+        @Label("Handler")
+        String handler;
+
+        @Label("Key Pair Id")
+        String keyPairId;
+
+        @Label("Status")
+        String status;
+
+        @Label("Error Code")
+        String errorCode;
+    }
+
+    @Name(Ec2Call.NAME)
+    @Label("EC2 Call")
+    @Category({"AWSSamples", "EC2 ImportKeyPair"})
+    @StackTrace(false)
+    static final class Ec2Call extends Event {
+        static final String NAME = "com.awssamples.ec2.importkeypair.Ec2Call";
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Region")
+        @Description("Empty for the region of the invocation")
+        String region;
+
+        @Label("Attempt")
+        int attempt;
+
+        @Label("Error Code")
+        String errorCode;
+    }
+
+    @Name(Translation.NAME)
+    @Label("Translation")
+    @Category({"AWSSamples", "EC2 ImportKeyPair"})
+    @StackTrace(false)
+    static final class Translation extends Event {
+        static final String NAME = "com.awssamples.ec2.importkeypair.Translation";
+
+        @Label("Method")
+        String method;
+    }
+
+    @Name(Stabilization.NAME)
+    @Label("Stabilization")
+    @Category({"AWSSamples", "EC2 ImportKeyPair"})
+    @StackTrace(false)
+    static final class Stabilization extends Event {
+        static final String NAME = "com.awssamples.ec2.importkeypair.Stabilization";
+
+        @Label("Action")
+        String action;
+
+        @Label("Attempt")
+        int attempt;
+
+        @Label("Regions")
+        int regions;
+
+        @Label("Failed Regions")
+        int failedRegions;
+
+        @Label("Stabilized")
+        boolean stabilized;
+    }
+
+    static Object beginInvocation() {
+        return begin(new Invocation());
+    }
+
+    static void endInvocation(final Object event, final String handler, final String keyPairId, final String status,
+            final String errorCode) {
+        final Invocation invocation = (Invocation) event;
+        invocation.handler = handler;
+        invocation.keyPairId = keyPairId;
+        invocation.status = status;
+        invocation.errorCode = errorCode;
+        invocation.commit();
+    }
+
+    static boolean isEc2CallEnabled() {
+        return EC2_CALL.isEnabled();
+    }
+
+    static Object beginEc2Call() {
+        return begin(new Ec2Call());
+    }
+
+    static void endEc2Call(final Object event, final String operation, final String region, final int attempt,
+            final String errorCode) {
+        final Ec2Call ec2Call = (Ec2Call) event;
+        ec2Call.operation = operation;
+        ec2Call.region = region;
+        ec2Call.attempt = attempt;
+        ec2Call.errorCode = errorCode;
+        ec2Call.commit();
+    }
+
+    static Object beginTranslation() {
+        return begin(new Translation());
+    }
+
+    static void endTranslation(final Object event, final String method) {
+        final Translation translation = (Translation) event;
+        translation.method = method;
+        translation.commit();
+    }
+
+    static Object beginStabilization() {
+        return begin(new Stabilization());
+    }
+
+    static void endStabilization(final Object event, final String action, final int attempt, final int regions,
+            final int failedRegions) {
+        final Stabilization stabilization = (Stabilization) event;
+        stabilization.action = action;
+        stabilization.attempt = attempt;
+        stabilization.regions = regions;
+        stabilization.failedRegions = failedRegions;
+        stabilization.stabilized = failedRegions == 0;
+        stabilization.commit();
+    }
+
+    private static Event begin(final Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+}
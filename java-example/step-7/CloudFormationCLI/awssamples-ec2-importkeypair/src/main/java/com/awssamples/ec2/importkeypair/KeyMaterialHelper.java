@@ -0,0 +1,218 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+
+/**
+ * Parses PublicKeyMaterial in the formats ImportKeyPair accepts (OpenSSH, RFC 4716 and base64
+ * encoded DER) so malformed keys are rejected locally instead of by an EC2 round trip.
+ */
+final class KeyMaterialHelper {
+    static final String RSA = "ssh-rsa";
+    static final String ED25519 = "ssh-ed25519";
+
+    private static final String RFC4716_BEGIN = "---- BEGIN SSH2 PUBLIC KEY ----";
+    private static final String RFC4716_END = "---- END SSH2 PUBLIC KEY ----";
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    private KeyMaterialHelper() {
+    }
+
+    /** A public key in SSH wire format (RFC 4253 section 6.6), whatever format it was submitted in. */
+    static final class PublicKeyBlob {
+        private final String type;
+        private final byte[] blob;
+
+        private PublicKeyBlob(final String type, final byte[] blob) {
+            this.type = type;
+            this.blob = blob;
+        }
+
+        String getType() {
+            return type;
+        }
+
+        byte[] getBlob() {
+            return blob.clone();
+        }
+    }
+
+    /**
+     * @param material the submitted PublicKeyMaterial
+     * @return the decoded RSA or ED25519 key, or null when the material is not a supported public key
+     */
+    static PublicKeyBlob parse(final String material) {
+        if (material == null || material.trim().isEmpty()) {
+            return null;
+        }
+        final String trimmed = material.trim();
+        try {
+            if (trimmed.startsWith(RFC4716_BEGIN)) {
+                return parseRfc4716(trimmed);
+            }
+            if (trimmed.startsWith("ssh-")) {
+                return parseOpenSsh(trimmed);
+            }
+            return parseDer(trimmed);
+        } catch (final IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The fingerprint EC2 reports for an imported key: for RSA the colon separated MD5 of the DER
+     * encoded X.509 SubjectPublicKeyInfo, which is not the MD5 of the SSH wire format ssh-keygen
+     * shows, and for ED25519 the base64 SHA-256 of the key in SSH wire format.
+     *
+     * @param key a parsed public key
+     * @return the fingerprint EC2 would assign to the key
+     */
+    static String fingerprint(final PublicKeyBlob key) {
+        if (ED25519.equals(key.type)) {
+            return Base64.getEncoder().encodeToString(digest("SHA-256", key.blob));
+        }
+        final byte[] md5 = digest("MD5", subjectPublicKeyInfo(key.blob));
+        final StringBuilder fingerprint = new StringBuilder(md5.length * 3);
+        for (final byte b : md5) {
+            if (fingerprint.length() > 0) {
+                fingerprint.append(':');
+            }
+            fingerprint.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * @param material the submitted PublicKeyMaterial
+     * @param fingerprint a fingerprint reported by EC2
+     * @return whether the fingerprint belongs to the submitted key; false when the material cannot be parsed
+     */
+    static boolean hasFingerprint(final String material, final String fingerprint) {
+        final PublicKeyBlob key = parse(material);
+        if (key == null || fingerprint == null) {
+            return false;
+        }
+        // base64 fingerprints are shown both with and without padding
+        return stripPadding(fingerprint(key)).equals(stripPadding(fingerprint.trim()));
+    }
+
+    private static String stripPadding(final String fingerprint) {
+        int end = fingerprint.length();
+        while (end > 0 && fingerprint.charAt(end - 1) == '=') {
+            end--;
+        }
+        return fingerprint.substring(0, end);
+    }
+
+    private static byte[] digest(final String algorithm, final byte[] value) {
+        try {
+            return MessageDigest.getInstance(algorithm).digest(value);
+        } catch (final NoSuchAlgorithmException e) {
+            // MD5 and SHA-256 are required of every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] subjectPublicKeyInfo(final byte[] rsaBlob) {
+        final ByteBuffer buffer = ByteBuffer.wrap(rsaBlob);
+        readString(buffer);
+        final BigInteger exponent = new BigInteger(readString(buffer));
+        final BigInteger modulus = new BigInteger(readString(buffer));
+        try {
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent)).getEncoded();
+        } catch (final GeneralSecurityException e) {
+            // RSA is required of every Java platform and the key was validated when it was parsed
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static PublicKeyBlob parseOpenSsh(final String material) {
+        // type, base64 key and an optional comment
+        final String[] fields = material.split("\\s+", 3);
+        if (fields.length < 2) {
+            return null;
+        }
+        final PublicKeyBlob key = fromBlob(Base64.getDecoder().decode(fields[1]));
+        return key != null && key.type.equals(fields[0]) ? key : null;
+    }
+
+    private static PublicKeyBlob parseRfc4716(final String material) {
+        final StringBuilder body = new StringBuilder();
+        boolean continuation = false;
+        final String[] lines = material.split("\\r?\\n");
+        for (int i = 1; i < lines.length; i++) {
+            final String line = lines[i].trim();
+            if (line.equals(RFC4716_END)) {
+                return fromBlob(Base64.getDecoder().decode(body.toString()));
+            }
+            // header lines carry a colon and may continue onto the next line with a backslash
+            if (continuation || line.contains(":")) {
+                continuation = line.endsWith("\\");
+                continue;
+            }
+            body.append(line);
+        }
+        return null;
+    }
+
+    private static PublicKeyBlob parseDer(final String material) throws GeneralSecurityException {
+        final byte[] der = Base64.getMimeDecoder().decode(material);
+        final RSAPublicKey key = (RSAPublicKey) KeyFactory.getInstance("RSA")
+                .generatePublic(new X509EncodedKeySpec(der));
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        writeString(blob, RSA.getBytes(StandardCharsets.US_ASCII));
+        writeString(blob, key.getPublicExponent().toByteArray());
+        writeString(blob, key.getModulus().toByteArray());
+        return new PublicKeyBlob(RSA, blob.toByteArray());
+    }
+
+    private static PublicKeyBlob fromBlob(final byte[] blob) {
+        final ByteBuffer buffer = ByteBuffer.wrap(blob);
+        final String type = new String(readString(buffer), StandardCharsets.US_ASCII);
+        if (RSA.equals(type)) {
+            final BigInteger exponent = new BigInteger(readString(buffer));
+            final BigInteger modulus = new BigInteger(readString(buffer));
+            if (exponent.signum() <= 0 || modulus.signum() <= 0) {
+                return null;
+            }
+        } else if (ED25519.equals(type)) {
+            if (readString(buffer).length != ED25519_KEY_LENGTH) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return buffer.hasRemaining() ? null : new PublicKeyBlob(type, blob);
+    }
+
+    private static byte[] readString(final ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            throw new IllegalArgumentException("Truncated public key");
+        }
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated public key");
+        }
+        final byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final byte[] value) {
+        out.write(value.length >>> 24);
+        out.write(value.length >>> 16);
+        out.write(value.length >>> 8);
+        out.write(value.length);
+        out.write(value, 0, value.length);
+    }
+}
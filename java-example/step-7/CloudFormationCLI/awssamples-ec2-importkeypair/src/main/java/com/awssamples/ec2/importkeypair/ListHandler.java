@@ -10,6 +10,15 @@ import software.amazon.cloudformation.proxy.*;
 import java.util.List;
 
 public class ListHandler extends BaseHandlerStd {
+    private final ListProjection projection;
+
+    public ListHandler() {
+        this(ListProjection.fromEnvironment());
+    }
+
+    ListHandler(final ListProjection projection) {
+        this.projection = projection;
+    }
 
     @Override
     public ProgressEvent<ResourceModel, CallbackContext> handleRequest(
@@ -20,19 +29,23 @@ public class ListHandler extends BaseHandlerStd {
           Logger logger){
 
 
-        final DescribeKeyPairsRequest describeKeyPairRequest = DescribeKeyPairsRequest
-                .builder()
-                .build();
-        final DescribeKeyPairsResponse describeKeyPairsResponse = proxy
-                .injectCredentialsAndInvokeV2(describeKeyPairRequest,
-                        proxyClient.client()::describeKeyPairs);
+        final DescribeKeyPairsResponse describeKeyPairsResponse = describeKeyPairs(request, proxyClient);
 
         final List<ResourceModel> models = Translator
-                .translateFromListRequest(describeKeyPairsResponse);
+                .translateFromListRequest(describeKeyPairsResponse, projection);
 
         return ProgressEvent.<ResourceModel, CallbackContext>builder()
                 .resourceModels(models)
                 .status(OperationStatus.SUCCESS)
                 .build();
     }
+
+    private static DescribeKeyPairsResponse describeKeyPairs(final ResourceHandlerRequest<ResourceModel> request,
+            final ProxyClient<Ec2Client> proxyClient) {
+        // filter on whatever the caller set on the desired state so EC2 does the filtering for us
+        final DescribeKeyPairsRequest describeKeyPairRequest = Translator
+                .translateToListRequest(request.getDesiredResourceState());
+        return proxyClient.injectCredentialsAndInvokeV2(describeKeyPairRequest, describeRequest -> HedgedDescribe
+                .getInstance().call(() -> proxyClient.client().describeKeyPairs(describeRequest)));
+    }
 }
@@ -0,0 +1,33 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.util.Locale;
+
+/**
+ * Controls how much of each key pair ListHandler returns. All projections are
+ * built from the same DescribeKeyPairs response, so none of them costs an extra call.
+ */
+public enum ListProjection {
+    /** Only the primary identifier (KeyPairId). */
+    IDENTIFIERS,
+    /** Identifier, name and fingerprint. */
+    SUMMARY,
+    /** The complete model, including tags. */
+    FULL;
+
+    static final String ENVIRONMENT_VARIABLE = "LIST_PROJECTION";
+
+    static ListProjection fromEnvironment() {
+        return parse(System.getenv(ENVIRONMENT_VARIABLE));
+    }
+
+    static ListProjection parse(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return SUMMARY;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            return SUMMARY;
+        }
+    }
+}
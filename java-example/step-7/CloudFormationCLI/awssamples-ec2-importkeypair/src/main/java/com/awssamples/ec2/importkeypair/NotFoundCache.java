@@ -0,0 +1,118 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers, for a short while, key pair ids this handler has deleted, so the reads and deletes
+ * that follow a teardown do not each pay for a DescribeKeyPairs call. Only a successful
+ * DeleteKeyPair adds an entry: an empty describe may just be EC2 not yet showing a key pair that
+ * was imported moments ago, and caching it would hide the key pair for a whole TTL. Key pair ids
+ * are never reused, so a deleted id stays missing and the TTL only bounds the memory held.
+ */
+final class NotFoundCache {
+    static final String TTL_ENVIRONMENT_VARIABLE = "NOT_FOUND_CACHE_TTL_SECONDS";
+    static final long DEFAULT_TTL_SECONDS = 30;
+    // past this size expired entries are purged, and if that is not enough the cache starts over
+    private static final int MAX_ENTRIES = 10_000;
+
+    private static final NotFoundCache INSTANCE = new NotFoundCache(ttlFromEnvironment(), System::nanoTime);
+
+    private final ConcurrentMap<List<String>, Long> expiries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+
+    NotFoundCache(final long ttlSeconds, final LongSupplier ticker) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.ticker = ticker;
+    }
+
+    static NotFoundCache getInstance() {
+        return INSTANCE;
+    }
+
+    static long ttlFromEnvironment() {
+        return parseTtl(System.getenv(TTL_ENVIRONMENT_VARIABLE));
+    }
+
+    static long parseTtl(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_TTL_SECONDS;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (final NumberFormatException e) {
+            return DEFAULT_TTL_SECONDS;
+        }
+    }
+
+    /**
+     * @return whether the key pair was confirmed missing within the TTL
+     */
+    boolean isMissing(final ResourceHandlerRequest<ResourceModel> request, final String keyPairId) {
+        if (ttlNanos == 0 || keyPairId == null) {
+            return false;
+        }
+        final List<String> key = key(request, keyPairId);
+        final Long expiry = expiries.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (ticker.getAsLong() - expiry >= 0) {
+            expiries.remove(key, expiry);
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    void markMissing(final ResourceHandlerRequest<ResourceModel> request, final String keyPairId) {
+        if (ttlNanos == 0 || keyPairId == null) {
+            return;
+        }
+        if (expiries.size() >= MAX_ENTRIES) {
+            purge();
+        }
+        expiries.put(key(request, keyPairId), ticker.getAsLong() + ttlNanos);
+    }
+
+    void clear(final ResourceHandlerRequest<ResourceModel> request, final String keyPairId) {
+        if (keyPairId != null) {
+            expiries.remove(key(request, keyPairId));
+        }
+    }
+
+    void clear() {
+        expiries.clear();
+    }
+
+    /** @return how many describe calls the cache has answered */
+    long hits() {
+        return hits.get();
+    }
+
+    int size() {
+        return expiries.size();
+    }
+
+    private void purge() {
+        final long now = ticker.getAsLong();
+        expiries.values().removeIf(expiry -> now - expiry >= 0);
+        if (expiries.size() >= MAX_ENTRIES) {
+            expiries.clear();
+        }
+    }
+
+    // ids are only unique within an account and region
+    private static List<String> key(final ResourceHandlerRequest<ResourceModel> request, final String keyPairId) {
+        return Arrays.asList(request.getAwsAccountId(), request.getRegion(), keyPairId);
+    }
+}
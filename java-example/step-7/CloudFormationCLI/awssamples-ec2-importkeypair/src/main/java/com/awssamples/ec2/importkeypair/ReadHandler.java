@@ -1,52 +1,121 @@
 package com.awssamples.ec2.importkeypair;
 
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.Logger;
 import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
 import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
-import software.amazon.cloudformation.exceptions.CfnNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 
 public class ReadHandler extends BaseHandlerStd {
-    private Logger logger;
+    // shared by every invocation in the container, including the reads nested in Update and Delete
+    static final SingleFlight<List<Object>, DescribeKeyPairsResponse> DESCRIBE_CALLS = new SingleFlight<>();
 
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(final AmazonWebServicesClientProxy proxy,
             final ResourceHandlerRequest<ResourceModel> request, final CallbackContext callbackContext,
             final ProxyClient<Ec2Client> proxyClient, final Logger logger) {
 
-        this.logger = logger;
-
         final ResourceModel model = request.getDesiredResourceState();
 
+        if (NotFoundCache.getInstance().isMissing(request, model.getKeyPairId())) {
+            return ProgressEvent.failed(model, callbackContext, HandlerErrorCode.NotFound, KEYPAIR_NOT_FOUND_MESSAGE);
+        }
+
         return ProgressEvent.progress(request.getDesiredResourceState(), callbackContext)
-                .then(progress -> proxy
+                .then(Tracing.stage("AWSSamples-EC2-ImportKeyPair::Read", progress -> proxy
                         .initiate("AWSSamples-EC2-ImportKeyPair::Read", proxyClient, model, callbackContext)
-                        .translateToServiceRequest(Translator::translateToReadRequest)
-                        .makeServiceCall(this::getResource)
-                        .done(describeKeyPairsResponse -> {    
-                                model.setKeyFingerprint(describeKeyPairsResponse.keyPairs().get(0).keyFingerprint());
+                        .translateToServiceRequest(Tracing.translateToServiceRequest(
+                                "AWSSamples-EC2-ImportKeyPair::Read", Translator::translateToReadRequest))
+                        .makeServiceCall(Tracing.makeServiceCall("AWSSamples-EC2-ImportKeyPair::Read",
+                                (getRequest, client) -> getResource(request, getRequest, client)))
+                        .done(describeKeyPairsResponse -> {
+                            // a missing key pair is an expected outcome, report it without throwing
+                            if (isEmpty(describeKeyPairsResponse)) {
+                                return ProgressEvent.failed(model, callbackContext, HandlerErrorCode.NotFound,
+                                        KEYPAIR_NOT_FOUND_MESSAGE);
+                            }
+                            model.setKeyFingerprint(describeKeyPairsResponse.keyPairs().get(0).keyFingerprint());
                             return ProgressEvent.progress(model, callbackContext);
-                        }))
+                        })))
                 .then(progress -> {
                     return ProgressEvent.defaultSuccessHandler(model);
                 });
     }
 
-    private DescribeKeyPairsResponse getResource(DescribeKeyPairsRequest getRequest,
+    /**
+     * Describes the key pair the way a read does, sharing its in-flight calls and not-found cache.
+     *
+     * @return the key pair, or null when it does not exist
+     */
+    KeyPairInfo describeKeyPair(final ResourceHandlerRequest<ResourceModel> request, final ResourceModel model,
             final ProxyClient<Ec2Client> proxyClient) {
-        DescribeKeyPairsResponse response = null;
+        if (NotFoundCache.getInstance().isMissing(request, model.getKeyPairId())) {
+            return null;
+        }
+        final DescribeKeyPairsResponse describeKeyPairsResponse = getResource(request,
+                Translator.translateToReadRequest(model), proxyClient);
+        if (isEmpty(describeKeyPairsResponse)) {
+            return null;
+        }
+        return describeKeyPairsResponse.keyPairs().get(0);
+    }
+
+    private DescribeKeyPairsResponse getResource(final ResourceHandlerRequest<ResourceModel> request,
+            final DescribeKeyPairsRequest getRequest, final ProxyClient<Ec2Client> proxyClient) {
         try {
-            response = proxyClient.injectCredentialsAndInvokeV2(getRequest, proxyClient.client()::describeKeyPairs);
-            
-            if (response.keyPairs().size() == 0) {
-                throw new CfnNotFoundException(ResourceModel.TYPE_NAME, "Resource not found");
-            }
+            // identical reads only share a call within the same account and region and with the same
+            // credentials, so the call is shared inside the proxy, once it has put them on the request
+            return proxyClient.injectCredentialsAndInvokeV2(getRequest, describeRequest -> DESCRIBE_CALLS.execute(
+                    Arrays.asList(request.getAwsAccountId(), request.getRegion(), credentialsOf(describeRequest),
+                            getRequest),
+                    () -> HedgedDescribe.getInstance().call(
+                            () -> proxyClient.client().describeKeyPairs(describeRequest))));
         } catch (final Exception e) {
             throw handleException(e, getRequest);
         }
-        return response;
+    }
+
+    /**
+     * @return a digest of the credentials the proxy put on the request, which tells callers apart
+     *         without keeping their secrets; null when the request carries none
+     */
+    static String credentialsOf(final AwsRequest request) {
+        final AwsCredentials credentials = request.overrideConfiguration()
+                .flatMap(AwsRequestOverrideConfiguration::credentialsProvider)
+                .map(AwsCredentialsProvider::resolveCredentials)
+                .orElse(null);
+        if (credentials == null) {
+            return null;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(credentials.accessKeyId().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(credentials.secretAccessKey().getBytes(StandardCharsets.UTF_8));
+        if (credentials instanceof AwsSessionCredentials) {
+            digest.update((byte) 0);
+            digest.update(((AwsSessionCredentials) credentials).sessionToken().getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
     }
 }
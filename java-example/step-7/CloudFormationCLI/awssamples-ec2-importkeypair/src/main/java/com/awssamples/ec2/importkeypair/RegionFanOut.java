@@ -0,0 +1,105 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.cloudformation.proxy.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs one call per additional region of a multi-region key pair in parallel. The calls block on
+ * EC2, so they share a cached pool of daemon threads that lives as long as the container.
+ */
+final class RegionFanOut {
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "region-fan-out-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RegionFanOut() {
+    }
+
+    /**
+     * @param model resource model
+     * @param homeRegion the region of the stack, which the handlers already cover
+     * @return the additional regions of the model in declaration order, without the home region or repeats
+     */
+    static List<String> additionalRegions(final ResourceModel model, final String homeRegion) {
+        if (model.getRegions() == null || model.getRegions().isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> regions = new ArrayList<>(model.getRegions().size());
+        for (final String region : model.getRegions()) {
+            if (region != null && !region.equals(homeRegion) && !regions.contains(region)) {
+                regions.add(region);
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * @param regions regions to call
+     * @param call the call to make in each region
+     * @param failures receives the exception of every region whose call failed
+     * @return the result of every region whose call succeeded
+     */
+    static <T> Map<String, T> invokeAll(final Collection<String> regions, final Function<String, T> call,
+            final Map<String, Exception> failures) {
+        final Map<String, Future<T>> futures = new LinkedHashMap<>();
+        // the calls' spans and metric lines belong to the invocation that fans out
+        final Tracing.Span parent = Tracing.current();
+        final Logger logger = EmbeddedMetrics.logger();
+        for (final String region : regions) {
+            futures.put(region, EXECUTOR.submit(() -> EmbeddedMetrics.callWithLogger(logger,
+                    () -> Tracing.callWithParent(parent, () -> call.apply(region)))));
+        }
+        final Map<String, T> results = new LinkedHashMap<>();
+        for (final Map.Entry<String, Future<T>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (final ExecutionException e) {
+                failures.put(future.getKey(), e.getCause() instanceof Exception
+                        ? (Exception) e.getCause() : new IllegalStateException(e.getCause()));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(future.getKey(), e);
+            }
+        }
+        return results;
+    }
+
+    static Map<String, String> fromModel(final List<RegionalKeyPair> regionalKeyPairs) {
+        final Map<String, String> keyPairIds = new LinkedHashMap<>();
+        if (regionalKeyPairs != null) {
+            for (final RegionalKeyPair regionalKeyPair : regionalKeyPairs) {
+                keyPairIds.put(regionalKeyPair.getRegion(), regionalKeyPair.getKeyPairId());
+            }
+        }
+        return keyPairIds;
+    }
+
+    static List<RegionalKeyPair> toModel(final Map<String, String> keyPairIds) {
+        if (keyPairIds.isEmpty()) {
+            return null;
+        }
+        final List<RegionalKeyPair> regionalKeyPairs = new ArrayList<>(keyPairIds.size());
+        for (final Map.Entry<String, String> keyPairId : keyPairIds.entrySet()) {
+            regionalKeyPairs.add(RegionalKeyPair.builder()
+                    .region(keyPairId.getKey())
+                    .keyPairId(keyPairId.getValue())
+                    .build());
+        }
+        return regionalKeyPairs;
+    }
+}
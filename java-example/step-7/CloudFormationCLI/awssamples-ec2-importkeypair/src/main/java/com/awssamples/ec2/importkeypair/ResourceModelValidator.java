@@ -0,0 +1,149 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks a resource model against the constraints declared in awssamples-ec2-importkeypair.json.
+ * The schema is read once per container and its constraints are compiled into plain field checks
+ * on ResourceModel and Tag, so invalid input is rejected before any EC2 call and without running
+ * a generic JSON schema validator on every invocation.
+ */
+final class ResourceModelValidator {
+    private static final ResourceModelValidator INSTANCE = fromSchema(new Configuration().resourceSchemaJSONObject());
+    private static final String RESERVED_TAG_PREFIX = "aws:";
+    // the character set the schema describes for tags, plus : and @ which AWS tagging also allows
+    private static final Pattern TAG_CHARACTERS = Pattern.compile("^[\\p{L}\\p{Z}\\p{N}_.:/=+\\-@]*$");
+
+    private final List<String> requiredProperties;
+    private final int tagKeyMinLength;
+    private final int tagKeyMaxLength;
+    private final int tagValueMinLength;
+    private final int tagValueMaxLength;
+    private final Pattern regionPattern;
+
+    private ResourceModelValidator(final List<String> requiredProperties,
+            final int tagKeyMinLength, final int tagKeyMaxLength,
+            final int tagValueMinLength, final int tagValueMaxLength, final Pattern regionPattern) {
+        this.requiredProperties = requiredProperties;
+        this.tagKeyMinLength = tagKeyMinLength;
+        this.tagKeyMaxLength = tagKeyMaxLength;
+        this.tagValueMinLength = tagValueMinLength;
+        this.tagValueMaxLength = tagValueMaxLength;
+        this.regionPattern = regionPattern;
+    }
+
+    static ResourceModelValidator getInstance() {
+        return INSTANCE;
+    }
+
+    static ResourceModelValidator fromSchema(final JSONObject schema) {
+        final List<String> required = new ArrayList<>();
+        final JSONArray requiredArray = schema.optJSONArray("required");
+        if (requiredArray != null) {
+            for (int i = 0; i < requiredArray.length(); i++) {
+                required.add(requiredArray.getString(i));
+            }
+        }
+        final JSONObject tagProperties = schema.getJSONObject("definitions")
+                .getJSONObject("Tag")
+                .getJSONObject("properties");
+        final JSONObject key = tagProperties.getJSONObject("Key");
+        final JSONObject value = tagProperties.getJSONObject("Value");
+        final JSONObject regions = schema.getJSONObject("properties").optJSONObject("Regions");
+        final String regionPattern = regions != null ? regions.getJSONObject("items").optString("pattern", null) : null;
+        return new ResourceModelValidator(Collections.unmodifiableList(required),
+                key.optInt("minLength", 0), key.optInt("maxLength", Integer.MAX_VALUE),
+                value.optInt("minLength", 0), value.optInt("maxLength", Integer.MAX_VALUE),
+                regionPattern != null ? Pattern.compile(regionPattern) : null);
+    }
+
+    /**
+     * @param model resource model to check
+     * @param checkRequired whether the schema's required properties must be present; they are
+     *                      create-only, so only a create has to carry them
+     * @return a description of the first violation, or null when the model is valid
+     */
+    String validate(final ResourceModel model, final boolean checkRequired) {
+        if (model == null) {
+            return "Resource model is required";
+        }
+        if (checkRequired) {
+            for (final String property : requiredProperties) {
+                if (isMissing(model, property)) {
+                    return String.format("Required property %s is missing", property);
+                }
+            }
+        }
+        if (model.getPublicKeyMaterial() != null && KeyMaterialHelper.parse(model.getPublicKeyMaterial()) == null) {
+            return "PublicKeyMaterial must be an RSA or ED25519 public key in OpenSSH, RFC 4716 or base64 encoded DER format";
+        }
+        if (model.getRegions() != null) {
+            final Set<String> regions = new HashSet<>();
+            for (final String region : model.getRegions()) {
+                if (region == null || (regionPattern != null && !regionPattern.matcher(region).matches())) {
+                    return String.format("%s is not a valid region", region);
+                }
+                if (!regions.add(region)) {
+                    return String.format("Region %s is specified more than once", region);
+                }
+            }
+        }
+        if (model.getTags() != null) {
+            final Set<String> keys = new HashSet<>();
+            for (final Tag tag : model.getTags()) {
+                if (tag == null || tag.getKey() == null || tag.getValue() == null) {
+                    return "Tags require both Key and Value";
+                }
+                if (!inRange(tag.getKey(), tagKeyMinLength, tagKeyMaxLength)) {
+                    return String.format("Tag key must be %d to %d characters long", tagKeyMinLength, tagKeyMaxLength);
+                }
+                if (!inRange(tag.getValue(), tagValueMinLength, tagValueMaxLength)) {
+                    return String.format("Tag value for %s must be %d to %d characters long",
+                            tag.getKey(), tagValueMinLength, tagValueMaxLength);
+                }
+                if (isReserved(tag.getKey()) || isReserved(tag.getValue())) {
+                    return String.format("Tag %s cannot be prefixed with %s", tag.getKey(), RESERVED_TAG_PREFIX);
+                }
+                if (!TAG_CHARACTERS.matcher(tag.getKey()).matches() || !TAG_CHARACTERS.matcher(tag.getValue()).matches()) {
+                    return String.format("Tag %s may only contain letters, digits, whitespace and _ . : / = + - @", tag.getKey());
+                }
+                if (!keys.add(tag.getKey())) {
+                    return String.format("Tag key %s is specified more than once", tag.getKey());
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMissing(final ResourceModel model, final String property) {
+        switch (property) {
+            case "KeyName":
+                return model.getKeyName() == null;
+            case "PublicKeyMaterial":
+                return model.getPublicKeyMaterial() == null;
+            case "Tags":
+                return model.getTags() == null;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isReserved(final String value) {
+        return value.toLowerCase(Locale.ROOT).startsWith(RESERVED_TAG_PREFIX);
+    }
+
+    // the schema counts Unicode characters, not UTF-16 code units
+    private static boolean inRange(final String value, final int minLength, final int maxLength) {
+        final int length = value.codePointCount(0, value.length());
+        return length >= minLength && length <= maxLength;
+    }
+}
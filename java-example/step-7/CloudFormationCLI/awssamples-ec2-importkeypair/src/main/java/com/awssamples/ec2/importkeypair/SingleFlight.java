@@ -0,0 +1,71 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical calls that are in flight at the same time into one: the first caller for a
+ * key makes the call and every caller that arrives before it returns gets the same result, or the
+ * same exception. Nothing is kept once the call has returned, so this never serves stale data.
+ */
+final class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong sharedCalls = new AtomicLong();
+
+    V execute(final K key, final Supplier<V> call) {
+        final CompletableFuture<V> flight = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            sharedCalls.incrementAndGet();
+            return await(existing);
+        }
+        calls.incrementAndGet();
+        try {
+            final V result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (final RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /** @return how many calls were actually made */
+    long calls() {
+        return calls.get();
+    }
+
+    /** @return how many callers were served by a call another caller made */
+    long sharedCalls() {
+        return sharedCalls.get();
+    }
+
+    /** @return how many calls are in flight right now */
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(final CompletableFuture<V> flight) {
+        try {
+            return flight.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,40 +1,98 @@
 package com.awssamples.ec2.importkeypair;
-import com.google.common.collect.Lists;
 import software.amazon.awssdk.services.ec2.model.Tag;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Objects;
 
+/**
+ * Tag conversions run for every key pair a handler touches or lists, so they are plain presized
+ * loops. The lists end up in models and contexts that callers may add to, so even a missing or
+ * empty tag collection maps to a new, modifiable list.
+ */
 public class TagHelper {
 
-    static List<com.awssamples.ec2.importkeypair.Tag> translateTagsToSdk(List<Tag> tags) {
-        return streamOfOrEmpty(tags)
-                .map(tag -> com.awssamples.ec2.importkeypair.Tag.builder().key(tag.key()).value(tag.value())
-                        .build())
-                .collect(Collectors.toList());
+    static List<com.awssamples.ec2.importkeypair.Tag> translateTagsToSdk(final List<Tag> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final List<com.awssamples.ec2.importkeypair.Tag> modelTags = new ArrayList<>(tags.size());
+        for (final Tag tag : tags) {
+            modelTags.add(new com.awssamples.ec2.importkeypair.Tag(tag.key(), tag.value()));
+        }
+        return modelTags;
     }
 
     static List<Tag> translateTagsFromSdk(final Collection<com.awssamples.ec2.importkeypair.Tag> tags) {
-        return streamOfOrEmpty(tags)
-                .map(tag -> Tag.builder().key(tag.getKey()).value(tag.getValue()).build())
-                .collect(Collectors.toList());
+        if (tags == null || tags.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final List<Tag> sdkTags = new ArrayList<>(tags.size());
+        for (final com.awssamples.ec2.importkeypair.Tag tag : tags) {
+            sdkTags.add(Tag.builder().key(tag.getKey()).value(tag.getValue()).build());
+        }
+        return sdkTags;
     }
 
-    static List<Tag> convertResourceTagsToList(Map<String, String> resourceTags) {
-        List<Tag> tags = Lists.newArrayList();
-        if (resourceTags != null) {
-            resourceTags.forEach((key, value) -> tags.add(Tag.builder().key(key).value(value).build()));
+    static List<Tag> convertResourceTagsToList(final Map<String, String> resourceTags) {
+        if (resourceTags == null || resourceTags.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final List<Tag> tags = new ArrayList<>(resourceTags.size());
+        for (final Map.Entry<String, String> resourceTag : resourceTags.entrySet()) {
+            tags.add(Tag.builder().key(resourceTag.getKey()).value(resourceTag.getValue()).build());
         }
         return tags;
     }
 
-    static <T> Stream<T> streamOfOrEmpty(final Collection<T> collection) {
-        return Optional.ofNullable(collection)
-                .map(Collection::stream)
-                .orElseGet(Stream::empty);
+    static Map<String, String> toMap(final Collection<Tag> tags) {
+        final Map<String, String> map = new LinkedHashMap<>();
+        if (tags != null) {
+            for (final Tag tag : tags) {
+                map.put(tag.key(), tag.value());
+            }
+        }
+        return map;
+    }
+
+    static Map<String, String> modelTagsToMap(final Collection<com.awssamples.ec2.importkeypair.Tag> tags) {
+        final Map<String, String> map = new LinkedHashMap<>();
+        if (tags != null) {
+            for (final com.awssamples.ec2.importkeypair.Tag tag : tags) {
+                map.put(tag.getKey(), tag.getValue());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return the keys of the current tags that are not desired any more
+     */
+    static List<String> tagsToRemove(final Map<String, String> currentTags, final Map<String, String> desiredTags) {
+        final List<String> keys = new ArrayList<>();
+        for (final String key : currentTags.keySet()) {
+            if (!desiredTags.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the desired tags that are missing or hold another value; CreateTags overwrites the
+     * value of a key that is already there, so changed tags need no removal first
+     */
+    static Map<String, String> tagsToAdd(final Map<String, String> currentTags, final Map<String, String> desiredTags) {
+        final Map<String, String> tags = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> tag : desiredTags.entrySet()) {
+            if (!currentTags.containsKey(tag.getKey())
+                    || !Objects.equals(tag.getValue(), currentTags.get(tag.getKey()))) {
+                tags.put(tag.getKey(), tag.getValue());
+            }
+        }
+        return tags;
     }
 }
@@ -0,0 +1,108 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.awscore.AwsResponse;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.pagination.sync.SdkIterable;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.cloudformation.proxy.ProxyClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Opens a client span and records a flight recorder event around every EC2 call made through the
+ * wrapped proxy client, and times the first EC2 call of the container for ConnectionPrewarm. One
+ * instance serves one invocation, so the calls of each operation are numbered within the invocation;
+ * the number is not the handler's attempt, and the SDK's own retries happen inside a single call.
+ */
+final class TracedProxyClient implements ProxyClient<Ec2Client> {
+    private final ProxyClient<Ec2Client> delegate;
+    private final String region;
+    private final ConcurrentMap<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private TracedProxyClient(final ProxyClient<Ec2Client> delegate, final String region) {
+        this.delegate = delegate;
+        this.region = region;
+    }
+
+    /**
+     * @param region the region the client calls, null for the region of the invocation
+     * @return the proxy client itself when neither tracing nor a flight recording wants the calls,
+     *         and the first call of the container has been made
+     */
+    static ProxyClient<Ec2Client> wrap(final ProxyClient<Ec2Client> delegate, final String region) {
+        return Tracing.isEnabled() || FlightRecorderEvents.isEc2CallEnabled() || ConnectionPrewarm.isFirstCallPending()
+                ? new TracedProxyClient(delegate, region) : delegate;
+    }
+
+    @Override
+    public <RequestT extends AwsRequest, ResponseT extends AwsResponse> ResponseT injectCredentialsAndInvokeV2(
+            final RequestT request, final Function<RequestT, ResponseT> requestFunction) {
+        // DescribeKeyPairsRequest -> DescribeKeyPairs
+        final String operation = request.getClass().getSimpleName().replaceFirst("Request$", "");
+        final int attempt = attempts.computeIfAbsent(operation, key -> new AtomicInteger()).incrementAndGet();
+        final Object event = FlightRecorderEvents.beginEc2Call();
+        final long started = System.nanoTime();
+        String errorCode = null;
+        try (Tracing.Span span = Tracing.start("EC2/" + operation, Tracing.SPAN_KIND_CLIENT)) {
+            span.attribute("rpc.system", "aws-api")
+                    .attribute("rpc.service", "EC2")
+                    .attribute("rpc.method", operation)
+                    .attribute("cloud.region", region)
+                    .attribute("call.sequence", attempt);
+            try {
+                return delegate.injectCredentialsAndInvokeV2(request, requestFunction);
+            } catch (final AwsServiceException e) {
+                errorCode = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : e.getClass().getSimpleName();
+                span.error(errorCode, e.getMessage());
+                throw e;
+            } catch (final RuntimeException e) {
+                errorCode = e.getClass().getSimpleName();
+                span.error(errorCode, e.getMessage());
+                throw e;
+            }
+        } finally {
+            ConnectionPrewarm.recordFirstCall(operation, System.nanoTime() - started);
+            FlightRecorderEvents.endEc2Call(event, operation, region, attempt, errorCode);
+        }
+    }
+
+    @Override
+    public <RequestT extends AwsRequest, ResponseT extends AwsResponse> CompletableFuture<ResponseT>
+            injectCredentialsAndInvokeV2Async(final RequestT request,
+                    final Function<RequestT, CompletableFuture<ResponseT>> requestFunction) {
+        return delegate.injectCredentialsAndInvokeV2Async(request, requestFunction);
+    }
+
+    @Override
+    public <RequestT extends AwsRequest, ResponseT extends AwsResponse, IterableT extends SdkIterable<ResponseT>>
+            IterableT injectCredentialsAndInvokeIterableV2(final RequestT request,
+                    final Function<RequestT, IterableT> requestFunction) {
+        return delegate.injectCredentialsAndInvokeIterableV2(request, requestFunction);
+    }
+
+    @Override
+    public <RequestT extends AwsRequest, ResponseT extends AwsResponse> ResponseInputStream<ResponseT>
+            injectCredentialsAndInvokeV2InputStream(final RequestT request,
+                    final Function<RequestT, ResponseInputStream<ResponseT>> requestFunction) {
+        return delegate.injectCredentialsAndInvokeV2InputStream(request, requestFunction);
+    }
+
+    @Override
+    public <RequestT extends AwsRequest, ResponseT extends AwsResponse> ResponseBytes<ResponseT>
+            injectCredentialsAndInvokeV2Bytes(final RequestT request,
+                    final Function<RequestT, ResponseBytes<ResponseT>> requestFunction) {
+        return delegate.injectCredentialsAndInvokeV2Bytes(request, requestFunction);
+    }
+
+    @Override
+    public Ec2Client client() {
+        return delegate.client();
+    }
+}
@@ -0,0 +1,371 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import software.amazon.cloudformation.proxy.CallChain;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.StdCallbackContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Minimal tracing for a handler invocation: one span for the invocation, one per stage of the
+ * progress chain, one per stage of each call chain and one per EC2 call. When an invocation ends
+ * its spans are appended to the file named by TRACE_FILE as one line of OTLP/JSON (an
+ * ExportTraceServiceRequest, the format the OpenTelemetry collector's file exporter writes and its
+ * file receiver reads). Without TRACE_FILE every span is the same no-op instance and stage
+ * functions are not wrapped at all.
+ */
+final class Tracing {
+    static final String FILE_ENVIRONMENT_VARIABLE = "TRACE_FILE";
+    // OTLP span kinds
+    static final int SPAN_KIND_INTERNAL = 1;
+    static final int SPAN_KIND_SERVER = 2;
+    static final int SPAN_KIND_CLIENT = 3;
+
+    private static final int STATUS_OK = 1;
+    private static final int STATUS_ERROR = 2;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    static final Span NOOP = new Span(null, null, null, 0);
+
+    private static volatile Path file = fileFromEnvironment();
+
+    private Tracing() {
+    }
+
+    static Path fileFromEnvironment() {
+        final String value = System.getenv(FILE_ENVIRONMENT_VARIABLE);
+        return value == null || value.trim().isEmpty() ? null : Paths.get(value.trim());
+    }
+
+    /**
+     * @param path file to append traces to, or null to turn tracing off
+     */
+    static void exportTo(final Path path) {
+        file = path;
+    }
+
+    static boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Starts a span as a child of the current span of this thread, or as the root of a new trace.
+     * Close it on the same thread.
+     */
+    static Span start(final String name, final int kind) {
+        if (file == null) {
+            return NOOP;
+        }
+        final Span parent = CURRENT.get();
+        final Span span = new Span(parent != null ? parent.trace : new Trace(), name, parent, kind);
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * @return the span to hand to work that continues on another thread, see {@link #callWithParent}
+     */
+    static Span current() {
+        final Span span = CURRENT.get();
+        return span != null ? span : NOOP;
+    }
+
+    /**
+     * Runs the call with the given span as its current span, so spans it starts join that trace.
+     */
+    static <T> T callWithParent(final Span parent, final Callable<T> call) throws Exception {
+        if (parent == NOOP) {
+            return call.call();
+        }
+        final Span previous = CURRENT.get();
+        CURRENT.set(parent);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Wraps one stage of a progress chain in a span named after it.
+     */
+    static <T, R> Function<T, R> stage(final String action, final Function<T, R> function) {
+        if (file == null) {
+            return function;
+        }
+        return input -> inSpan(action, action, null, () -> function.apply(input));
+    }
+
+    /**
+     * Wraps the translateToServiceRequest stage of a call chain in a span named after the chain's action.
+     */
+    static <M, R> Function<M, R> translateToServiceRequest(final String action, final Function<M, R> translate) {
+        if (file == null) {
+            return translate;
+        }
+        final String stage = "translateToServiceRequest";
+        return model -> inSpan(action + "::" + stage, action, stage, () -> translate.apply(model));
+    }
+
+    /**
+     * Wraps the makeServiceCall stage of a call chain in a span named after the chain's action.
+     */
+    static <R, C, S> BiFunction<R, C, S> makeServiceCall(final String action, final BiFunction<R, C, S> call) {
+        if (file == null) {
+            return call;
+        }
+        final String stage = "makeServiceCall";
+        return (request, client) -> inSpan(action + "::" + stage, action, stage, () -> call.apply(request, client));
+    }
+
+    /**
+     * Wraps the stabilize stage of a call chain in a span named after the chain's action.
+     */
+    static <R, S, C, M, X extends StdCallbackContext> CallChain.Callback<R, S, C, M, X, Boolean> stabilize(
+            final String action, final CallChain.Callback<R, S, C, M, X, Boolean> stabilize) {
+        if (file == null) {
+            return stabilize;
+        }
+        final String stage = "stabilize";
+        return (request, response, client, model, context) -> inSpan(action + "::" + stage, action, stage,
+                () -> stabilize.invoke(request, response, client, model, context));
+    }
+
+    /**
+     * Wraps the handleError stage of a call chain in a span named after the chain's action.
+     */
+    static <R, C, M, X extends StdCallbackContext>
+            CallChain.ExceptionPropagate<R, Exception, C, M, X, ProgressEvent<M, X>> handleError(final String action,
+                    final CallChain.ExceptionPropagate<R, Exception, C, M, X, ProgressEvent<M, X>> handleError) {
+        if (file == null) {
+            return handleError;
+        }
+        final String stage = "handleError";
+        return (request, exception, client, model, context) -> {
+            try (Span span = start(action + "::" + stage, SPAN_KIND_INTERNAL)) {
+                span.attribute("action", action)
+                        .attribute("stage", stage)
+                        .attribute("exception.type", exception.getClass().getSimpleName());
+                try {
+                    return handleError.invoke(request, exception, client, model, context);
+                } catch (final Exception e) {
+                    span.error(e.getClass().getSimpleName(), e.getMessage());
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private static <R> R inSpan(final String name, final String action, final String stage, final Supplier<R> body) {
+        try (Span span = start(name, SPAN_KIND_INTERNAL)) {
+            span.attribute("action", action)
+                    .attribute("stage", stage);
+            try {
+                return body.get();
+            } catch (final RuntimeException e) {
+                span.error(e.getClass().getSimpleName(), e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /** The spans of one invocation, exported together when its root span ends. */
+    private static final class Trace {
+        private final String traceId = randomHex(16);
+        private final List<Span> spans = new ArrayList<>();
+
+        synchronized void add(final Span span) {
+            spans.add(span);
+        }
+
+        synchronized List<Span> spans() {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    static final class Span implements AutoCloseable {
+        private final Trace trace;
+        private final String name;
+        private final Span parent;
+        private final int kind;
+        private final String spanId;
+        private final long startEpochNanos;
+        private final long startNanos;
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private long endEpochNanos;
+        private int status = STATUS_OK;
+        private String statusMessage;
+
+        private Span(final Trace trace, final String name, final Span parent, final int kind) {
+            this.trace = trace;
+            this.name = name;
+            this.parent = parent;
+            this.kind = kind;
+            this.spanId = trace == null ? null : randomHex(8);
+            this.startEpochNanos = trace == null ? 0 : TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            this.startNanos = trace == null ? 0 : System.nanoTime();
+        }
+
+        /**
+         * @param value a String, Number or Boolean; null values are left out
+         */
+        Span attribute(final String key, final Object value) {
+            if (trace != null && value != null) {
+                synchronized (this) {
+                    attributes.put(key, value);
+                }
+            }
+            return this;
+        }
+
+        Span error(final String code, final String message) {
+            if (trace != null) {
+                attribute("error.type", code);
+                status = STATUS_ERROR;
+                statusMessage = message;
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (trace == null) {
+                return;
+            }
+            endEpochNanos = startEpochNanos + (System.nanoTime() - startNanos);
+            trace.add(this);
+            if (CURRENT.get() == this) {
+                if (parent != null) {
+                    CURRENT.set(parent);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+            if (parent == null) {
+                export(trace);
+            }
+        }
+    }
+
+    private static void export(final Trace trace) {
+        final Path target = file;
+        if (target == null) {
+            return;
+        }
+        try {
+            final byte[] line = (toJson(trace.spans()) + "\n").getBytes(StandardCharsets.UTF_8);
+            synchronized (Tracing.class) {
+                try (OutputStream output = Files.newOutputStream(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)) {
+                    output.write(line);
+                }
+            }
+        } catch (final IOException e) {
+            // tracing must never fail an invocation; the trace is lost
+        }
+    }
+
+    static String toJson(final List<Span> spans) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("resourceSpans");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("resource");
+            writeAttributes(generator, Collections.<String, Object>singletonMap("service.name", ResourceModel.TYPE_NAME));
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("scopeSpans");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("scope");
+            generator.writeStringField("name", Tracing.class.getPackage().getName());
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("spans");
+            for (final Span span : spans) {
+                writeSpan(generator, span);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    private static void writeSpan(final JsonGenerator generator, final Span span) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("traceId", span.trace.traceId);
+        generator.writeStringField("spanId", span.spanId);
+        if (span.parent != null) {
+            generator.writeStringField("parentSpanId", span.parent.spanId);
+        }
+        generator.writeStringField("name", span.name);
+        generator.writeNumberField("kind", span.kind);
+        // 64-bit integers are strings in OTLP/JSON
+        generator.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos));
+        generator.writeStringField("endTimeUnixNano", Long.toString(span.endEpochNanos));
+        synchronized (span) {
+            writeAttributes(generator, span.attributes);
+        }
+        generator.writeObjectFieldStart("status");
+        generator.writeNumberField("code", span.status);
+        if (span.statusMessage != null) {
+            generator.writeStringField("message", span.statusMessage);
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static void writeAttributes(final JsonGenerator generator, final Map<String, Object> attributes)
+            throws IOException {
+        generator.writeArrayFieldStart("attributes");
+        for (final Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            generator.writeStartObject();
+            generator.writeStringField("key", attribute.getKey());
+            generator.writeObjectFieldStart("value");
+            final Object value = attribute.getValue();
+            if (value instanceof Boolean) {
+                generator.writeBooleanField("boolValue", (Boolean) value);
+            } else if (value instanceof Integer || value instanceof Long) {
+                generator.writeStringField("intValue", value.toString());
+            } else if (value instanceof Number) {
+                generator.writeNumberField("doubleValue", ((Number) value).doubleValue());
+            } else {
+                generator.writeStringField("stringValue", value.toString());
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static String randomHex(final int bytes) {
+        final char[] hex = new char[bytes * 2];
+        for (int i = 0; i < hex.length; i++) {
+            hex[i] = HEX_DIGITS[ThreadLocalRandom.current().nextInt(16)];
+        }
+        return new String(hex);
+    }
+}
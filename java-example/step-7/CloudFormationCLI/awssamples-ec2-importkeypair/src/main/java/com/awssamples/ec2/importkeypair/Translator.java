@@ -9,15 +9,11 @@ import software.amazon.awssdk.services.ec2.model.Filter;
 import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
 import software.amazon.awssdk.services.ec2.model.ResourceType;
 import software.amazon.awssdk.services.ec2.model.TagSpecification;
-import software.amazon.cloudformation.exceptions.CfnNotFoundException;
 import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static org.apache.commons.collections.CollectionUtils.isNotEmpty;
 
 import java.util.*;
 
@@ -37,17 +33,22 @@ public class Translator {
    * @return awsRequest the aws service request to create a resource
    */
   static ImportKeyPairRequest translateToCreateRequest(final ResourceModel model) {
-    ImportKeyPairRequest.Builder builder = ImportKeyPairRequest.builder()
-            .keyName(model.getKeyName())
-            .publicKeyMaterial(SdkBytes.fromUtf8String(model.getPublicKeyMaterial()));
-    //  tag specs hasTags() returns true even with zero length tag list
-    if (isNotEmpty(model.getTags())) {
-      TagSpecification tagSpec = TagSpecification.builder()
-              .tags(TagHelper.translateTagsFromSdk(model.getTags()))
-              .resourceType(ResourceType.KEY_PAIR).build();
-      builder.tagSpecifications(tagSpec);
+    final Object event = FlightRecorderEvents.beginTranslation();
+    try {
+      ImportKeyPairRequest.Builder builder = ImportKeyPairRequest.builder()
+              .keyName(model.getKeyName())
+              .publicKeyMaterial(SdkBytes.fromUtf8String(model.getPublicKeyMaterial()));
+      //  tag specs hasTags() returns true even with zero length tag list
+      if (isNotEmpty(model.getTags())) {
+        TagSpecification tagSpec = TagSpecification.builder()
+                .tags(TagHelper.translateTagsFromSdk(model.getTags()))
+                .resourceType(ResourceType.KEY_PAIR).build();
+        builder.tagSpecifications(tagSpec);
+      }
+      return builder.build();
+    } finally {
+      FlightRecorderEvents.endTranslation(event, "translateToCreateRequest");
     }
-    return builder.build();
   }
 
   /**
@@ -56,13 +57,85 @@ public class Translator {
    * @return awsRequest the aws service request to describe a resource
    */
   static DescribeKeyPairsRequest translateToReadRequest(final ResourceModel model) {
-    DescribeKeyPairsRequest builder = DescribeKeyPairsRequest.builder()
-            .filters(Filter.builder()
-                      .name("key-pair-id")
-                      .values(model.getKeyPairId())
-                      .build())
+    final Object event = FlightRecorderEvents.beginTranslation();
+    try {
+      DescribeKeyPairsRequest builder = DescribeKeyPairsRequest.builder()
+              .filters(Filter.builder()
+                        .name("key-pair-id")
+                        .values(model.getKeyPairId())
+                        .build())
+              .build();
+      return builder;
+    } finally {
+      FlightRecorderEvents.endTranslation(event, "translateToReadRequest");
+    }
+  }
+
+  /**
+   * Request to read a resource by its name, for keys imported outside this resource
+   * @param model resource model
+   * @return awsRequest the aws service request to describe a resource
+   */
+  static DescribeKeyPairsRequest translateToReadByNameRequest(final ResourceModel model) {
+    return DescribeKeyPairsRequest.builder()
+            .filters(filter("key-name", model.getKeyName()))
             .build();
-    return builder;
+  }
+
+  /**
+   * Request to list resources, pushing the fields set on the model down as server-side filters
+   * @param model resource model carrying the filter values, may be null
+   * @return awsRequest the aws service request to list resources
+   */
+  static DescribeKeyPairsRequest translateToListRequest(final ResourceModel model) {
+    final Object event = FlightRecorderEvents.beginTranslation();
+    try {
+      return buildListRequest(model);
+    } finally {
+      FlightRecorderEvents.endTranslation(event, "translateToListRequest");
+    }
+  }
+
+  private static DescribeKeyPairsRequest buildListRequest(final ResourceModel model) {
+    final List<Filter> filters = new ArrayList<>();
+    if (model != null) {
+      if (hasText(model.getKeyName())) {
+        filters.add(filter("key-name", model.getKeyName()));
+      }
+      if (hasText(model.getKeyPairId())) {
+        filters.add(filter("key-pair-id", model.getKeyPairId()));
+      }
+      if (model.getTags() != null) {
+        for (final Tag tag : model.getTags()) {
+          // a tag without a value only asks for the key to be present
+          if (hasText(tag.getValue())) {
+            filters.add(filter("tag:" + tag.getKey(), tag.getValue()));
+          } else {
+            filters.add(filter("tag-key", tag.getKey()));
+          }
+        }
+      }
+    }
+    final DescribeKeyPairsRequest.Builder builder = DescribeKeyPairsRequest.builder();
+    if (!filters.isEmpty()) {
+      builder.filters(filters);
+    }
+    return builder.build();
+  }
+
+  private static Filter filter(final String name, final String value) {
+    return Filter.builder()
+            .name(name)
+            .values(value)
+            .build();
+  }
+
+  private static boolean hasText(final String value) {
+    return value != null && !value.isEmpty();
+  }
+
+  private static boolean isNotEmpty(final Collection<?> values) {
+    return values != null && !values.isEmpty();
   }
 
   /**
@@ -73,8 +146,17 @@ public class Translator {
    * @return model resource model
    */
   static ProgressEvent<ResourceModel, CallbackContext> translateFromReadResponse(final DescribeKeyPairsResponse response, ResourceModel resourceModel) {
+    final Object event = FlightRecorderEvents.beginTranslation();
+    try {
+      return fromReadResponse(response, resourceModel);
+    } finally {
+      FlightRecorderEvents.endTranslation(event, "translateFromReadResponse");
+    }
+  }
+
+  private static ProgressEvent<ResourceModel, CallbackContext> fromReadResponse(final DescribeKeyPairsResponse response, ResourceModel resourceModel) {
     if (response.keyPairs().size() == 0) {
-      return ProgressEvent.defaultFailureHandler(new CfnNotFoundException(resourceModel.getKeyPairId(), resourceModel.getKeyName()), HandlerErrorCode.NotFound);
+      return ProgressEvent.failed(resourceModel, null, HandlerErrorCode.NotFound, BaseHandlerStd.KEYPAIR_NOT_FOUND_MESSAGE);
     }
     ResourceModel builder = ResourceModel.builder()
           .keyName(response.keyPairs().get(0).keyName())
@@ -94,10 +176,30 @@ public class Translator {
    * @return awsRequest the aws service request to delete a resource
    */
   static DeleteKeyPairRequest translateToDeleteRequest(final ResourceModel model) {
-    return DeleteKeyPairRequest.builder()
-        .keyName(model.getKeyName())
-        .keyPairId(model.getKeyPairId())
-        .build();
+    final Object event = FlightRecorderEvents.beginTranslation();
+    try {
+      return DeleteKeyPairRequest.builder()
+          .keyName(model.getKeyName())
+          .keyPairId(model.getKeyPairId())
+          .build();
+    } finally {
+      FlightRecorderEvents.endTranslation(event, "translateToDeleteRequest");
+    }
+  }
+
+  /**
+   * The same key pair as seen from one of the additional regions
+   * @param model resource model
+   * @param keyPairId the id of the key pair in that region
+   * @return model resource model to build that region's requests from
+   */
+  static ResourceModel translateToRegionalModel(final ResourceModel model, final String keyPairId) {
+    return ResourceModel.builder()
+            .keyName(model.getKeyName())
+            .publicKeyMaterial(model.getPublicKeyMaterial())
+            .tags(model.getTags())
+            .keyPairId(keyPairId)
+            .build();
   }
 
   static CreateTagsRequest translateToAddTagsRequest(String keyPairId, List<Tag> tags) {
@@ -107,17 +209,22 @@ public class Translator {
             .build();
 }
 
-static CreateTagsRequest translateToAddTagsRequest(final ResourceModel model) {
+static CreateTagsRequest translateToAddTagsRequest(final String keyPairId, final Map<String, String> tags) {
   return CreateTagsRequest.builder()
-          .resources(model.getKeyPairId())
-          .tags(TagHelper.translateTagsFromSdk(model.getTags()))
+          .resources(keyPairId)
+          .tags(TagHelper.convertResourceTagsToList(tags))
           .build();
 }
 
-static DeleteTagsRequest translateToRemoveTagsRequest(final ResourceModel model) {
+// a tag given by key alone is removed whatever its value
+static DeleteTagsRequest translateToRemoveTagsRequest(final String keyPairId, final Collection<String> keys) {
+    final List<software.amazon.awssdk.services.ec2.model.Tag> tags = new ArrayList<>(keys.size());
+    for (final String key : keys) {
+        tags.add(software.amazon.awssdk.services.ec2.model.Tag.builder().key(key).build());
+    }
     return DeleteTagsRequest.builder()
-            .resources(model.getKeyPairId())
-            .tags(TagHelper.translateTagsFromSdk(model.getTags()))
+            .resources(keyPairId)
+            .tags(tags)
             .build();
 }
 
@@ -138,13 +245,32 @@ static ResourceModel translateFromDescribeResponse(final ResourceModel model,
     }
 
     static List<ResourceModel> translateFromListRequest(
-            final DescribeKeyPairsResponse describeKeyPairsResponse) {
-        return TagHelper.streamOfOrEmpty(describeKeyPairsResponse.keyPairs())
-                .map(keyPairInfo -> ResourceModel.builder()
-                        .keyPairId(keyPairInfo.keyPairId())
-                        .keyFingerprint(keyPairInfo.keyFingerprint())
-                        .keyName(keyPairInfo.keyName())
-                        .build())
-                .collect(Collectors.toList());
+            final DescribeKeyPairsResponse describeKeyPairsResponse, final ListProjection projection) {
+        final Object event = FlightRecorderEvents.beginTranslation();
+        try {
+            final List<KeyPairInfo> keyPairs = describeKeyPairsResponse.keyPairs();
+            final List<ResourceModel> models = new ArrayList<>(keyPairs.size());
+            for (final KeyPairInfo keyPairInfo : keyPairs) {
+                models.add(translateFromKeyPairInfo(keyPairInfo, projection));
+            }
+            return models;
+        } finally {
+            FlightRecorderEvents.endTranslation(event, "translateFromListRequest");
+        }
+    }
+
+    static ResourceModel translateFromKeyPairInfo(final KeyPairInfo keyPairInfo, final ListProjection projection) {
+        final ResourceModel.ResourceModelBuilder builder = ResourceModel.builder()
+                .keyPairId(keyPairInfo.keyPairId());
+        if (projection == ListProjection.IDENTIFIERS) {
+            return builder.build();
+        }
+        builder.keyFingerprint(keyPairInfo.keyFingerprint())
+                .keyName(keyPairInfo.keyName());
+        //  tags are already on the describe response, so a full model needs no follow-up read
+        if (projection == ListProjection.FULL && isNotEmpty(keyPairInfo.tags())) {
+            builder.tags(TagHelper.translateTagsToSdk(keyPairInfo.tags()));
+        }
+        return builder.build();
     }
 }
@@ -3,11 +3,19 @@ package com.awssamples.ec2.importkeypair;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.DeleteTagsResponse;
 import software.amazon.awssdk.services.ec2.model.CreateTagsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
+import software.amazon.cloudformation.exceptions.CfnNotFoundException;
 import software.amazon.cloudformation.proxy.*;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 
 public class UpdateHandler extends BaseHandlerStd {
-    private Logger logger;
+    private static final ReadHandler READ_HANDLER = new ReadHandler();
 
     protected ProgressEvent<ResourceModel, CallbackContext> handleRequest(
             final AmazonWebServicesClientProxy proxy,
@@ -16,26 +24,129 @@ public class UpdateHandler extends BaseHandlerStd {
             final ProxyClient<Ec2Client> proxyClient,
             final Logger logger) {
 
-        this.logger = logger;
-
         final ResourceModel model = request.getDesiredResourceState();
+        callbackContext.discardStaleProgress();
 
+        // each step records itself in the context, so a re-invocation picks up at the first one not done
         return ProgressEvent.progress(request.getDesiredResourceState(), callbackContext)
-            .then(progress->new ReadHandler().handleRequest(proxy, request, callbackContext, proxyClient, logger))
-            .onSuccess(progress -> deleteTags(proxy, proxyClient, model, callbackContext)
-            )
-            .then(progress -> addTags(proxy, proxyClient, model, callbackContext)
-            )
+            .then(progress -> validateModel(model, callbackContext, false))
+            .then(Tracing.stage("AWSSamples-EC2-ImportKeyPair::Update::Read",
+                progress -> readCurrentState(request, model, callbackContext, proxyClient, logger)))
+            .then(Tracing.stage("AAWSSamples-EC2-ImportKeyPair::Update::DeleteTag",
+                progress -> deleteTags(proxy, proxyClient, model, callbackContext, logger)))
+            .then(Tracing.stage("AAWSSamples-EC2-ImportKeyPair::Update::AddTag",
+                progress -> addTags(proxy, proxyClient, model, callbackContext, logger)))
+            .then(Tracing.stage("AWSSamples-EC2-ImportKeyPair::Update::Regions",
+                progress -> updateRegions(proxy, request, model, callbackContext, logger)))
             .then(progress -> ProgressEvent.defaultSuccessHandler(model));
     }
 
+    /**
+     * Describes the key pair once per update and keeps what it found, along with the tag changes
+     * that take it to the desired state.
+     */
+    private ProgressEvent<ResourceModel, CallbackContext> readCurrentState(
+            final ResourceHandlerRequest<ResourceModel> request, final ResourceModel model,
+            final CallbackContext context, final ProxyClient<Ec2Client> proxyClient, final Logger logger) {
+        if (!context.isCompleted(CallbackContext.Step.READ)) {
+            final KeyPairInfo keyPairInfo = READ_HANDLER.describeKeyPair(request, model, proxyClient);
+            if (keyPairInfo == null) {
+                return ProgressEvent.failed(model, context, HandlerErrorCode.NotFound, KEYPAIR_NOT_FOUND_MESSAGE);
+            }
+            final Map<String, String> currentTags = TagHelper.toMap(keyPairInfo.tags());
+            final Map<String, String> desiredTags = TagHelper.modelTagsToMap(model.getTags());
+            context.setKeyFingerprint(keyPairInfo.keyFingerprint());
+            context.setCurrentTags(currentTags);
+            context.setTagsToRemove(TagHelper.tagsToRemove(currentTags, desiredTags));
+            context.setTagsToAdd(TagHelper.tagsToAdd(currentTags, desiredTags));
+            context.complete(CallbackContext.Step.READ);
+            logger.log(String.format("%s %s: %d tags to remove, %d to add", ResourceModel.TYPE_NAME,
+                    model.getKeyPairId(), context.getTagsToRemove().size(), context.getTagsToAdd().size()));
+        }
+        model.setKeyFingerprint(context.getKeyFingerprint());
+        return ProgressEvent.progress(model, context);
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> updateRegions(final AmazonWebServicesClientProxy proxy,
+            final ResourceHandlerRequest<ResourceModel> request, final ResourceModel model,
+            final CallbackContext context, final Logger logger) {
+        // Regions is create-only and RegionalKeyPairIds read-only, so fall back to the previous state for both
+        final ResourceModel previous = request.getPreviousResourceState();
+        if (model.getRegions() == null && previous != null) {
+            model.setRegions(previous.getRegions());
+        }
+        if (model.getRegionalKeyPairIds() == null && previous != null) {
+            model.setRegionalKeyPairIds(previous.getRegionalKeyPairIds());
+        }
+        final Map<String, String> keyPairIds = RegionFanOut.fromModel(model.getRegionalKeyPairIds());
+        final List<String> pending = new ArrayList<>();
+        if (!context.isCompleted(CallbackContext.Step.REGIONS)) {
+            for (final String region : RegionFanOut.additionalRegions(model, request.getRegion())) {
+                if (!context.getCompletedRegions().contains(region)) {
+                    pending.add(region);
+                }
+            }
+        }
+        final Map<String, Exception> failures = new LinkedHashMap<>();
+        keyPairIds.putAll(invokeRegions("AWSSamples-EC2-ImportKeyPair::Update::Regions", pending, context,
+                region -> updateRegion(proxyClientFor(proxy, region), model, context, region, keyPairIds.get(region),
+                        logger),
+                failures));
+        context.getCompletedRegions().addAll(pending);
+        context.getCompletedRegions().removeAll(failures.keySet());
+        model.setRegionalKeyPairIds(RegionFanOut.toModel(keyPairIds));
+        if (!failures.isEmpty()) {
+            return handleRegionalFailures(model, context, failures);
+        }
+        context.complete(CallbackContext.Step.REGIONS);
+        return ProgressEvent.progress(model, context);
+    }
+
+    /**
+     * Applies the tag changes found at home to the key pair in one region, which was tagged the
+     * same way when it was imported.
+     *
+     * @return the id of the key pair in that region
+     */
+    private String updateRegion(final ProxyClient<Ec2Client> proxyClient, final ResourceModel model,
+            final CallbackContext context, final String region, final String knownKeyPairId, final Logger logger) {
+        String keyPairId = knownKeyPairId;
+        if (keyPairId == null) {
+            final DescribeKeyPairsResponse describeKeyPairsResponse = getKeyPairsResponse(
+                    Translator.translateToReadByNameRequest(model), proxyClient);
+            if (isEmpty(describeKeyPairsResponse)) {
+                throw new CfnNotFoundException(ResourceModel.TYPE_NAME, model.getKeyName() + " in " + region);
+            }
+            keyPairId = describeKeyPairsResponse.keyPairs().get(0).keyPairId();
+        }
+        if (!context.getTagsToRemove().isEmpty()) {
+            proxyClient.injectCredentialsAndInvokeV2(
+                    Translator.translateToRemoveTagsRequest(keyPairId, context.getTagsToRemove()),
+                    proxyClient.client()::deleteTags);
+        }
+        if (!context.getTagsToAdd().isEmpty()) {
+            proxyClient.injectCredentialsAndInvokeV2(
+                    Translator.translateToAddTagsRequest(keyPairId, context.getTagsToAdd()),
+                    proxyClient.client()::createTags);
+        }
+        logger.log(String.format("%s tags updated in %s", ResourceModel.TYPE_NAME, region));
+        return keyPairId;
+    }
+
     private ProgressEvent<ResourceModel, CallbackContext> deleteTags(
             final AmazonWebServicesClientProxy proxy, final ProxyClient<Ec2Client> proxyClient,
-            final ResourceModel model, final CallbackContext context) {
+            final ResourceModel model, final CallbackContext context, final Logger logger) {
+        if (context.isCompleted(CallbackContext.Step.DELETE_TAGS) || context.getTagsToRemove().isEmpty()) {
+            context.complete(CallbackContext.Step.DELETE_TAGS);
+            return ProgressEvent.progress(model, context);
+        }
+        final String action = "AAWSSamples-EC2-ImportKeyPair::Update::DeleteTag";
         return proxy
-                .initiate("AAWSSamples-EC2-ImportKeyPair::Update::DeleteTag", proxyClient, model, context)
-                .translateToServiceRequest(Translator::translateToRemoveTagsRequest)
-                .makeServiceCall((deleteTagRequest, client) -> {
+                .initiate(action, proxyClient, model, context)
+                .translateToServiceRequest(Tracing.translateToServiceRequest(action,
+                        resourceModel -> Translator.translateToRemoveTagsRequest(resourceModel.getKeyPairId(),
+                                context.getTagsToRemove())))
+                .makeServiceCall(Tracing.makeServiceCall(action, (deleteTagRequest, client) -> {
                     DeleteTagsResponse deleteTagsResponse  = null;
                     try {
                         deleteTagsResponse = proxyClient
@@ -47,18 +158,28 @@ public class UpdateHandler extends BaseHandlerStd {
                     logger.log(String.format("%s tags removed",
                             ResourceModel.TYPE_NAME));
                     return deleteTagsResponse;
-                })
-                .handleError(this::handleError)
-                .progress();
+                }))
+                .handleError(Tracing.handleError(action, this::handleError))
+                .done(deleteTagsResponse -> {
+                    context.complete(CallbackContext.Step.DELETE_TAGS);
+                    return ProgressEvent.progress(model, context);
+                });
     }
 
     private ProgressEvent<ResourceModel, CallbackContext> addTags(
             final AmazonWebServicesClientProxy proxy, final ProxyClient<Ec2Client> proxyClient,
-            final ResourceModel model, final CallbackContext context) {
+            final ResourceModel model, final CallbackContext context, final Logger logger) {
+        if (context.isCompleted(CallbackContext.Step.ADD_TAGS) || context.getTagsToAdd().isEmpty()) {
+            context.complete(CallbackContext.Step.ADD_TAGS);
+            return ProgressEvent.progress(model, context);
+        }
+        final String action = "AAWSSamples-EC2-ImportKeyPair::Update::AddTag";
         return proxy
-                .initiate("AAWSSamples-EC2-ImportKeyPair::Update::AddTag", proxyClient, model, context)
-                .translateToServiceRequest(Translator::translateToAddTagsRequest)
-                .makeServiceCall((createTagsRequest, client) -> {
+                .initiate(action, proxyClient, model, context)
+                .translateToServiceRequest(Tracing.translateToServiceRequest(action,
+                        resourceModel -> Translator.translateToAddTagsRequest(resourceModel.getKeyPairId(),
+                                context.getTagsToAdd())))
+                .makeServiceCall(Tracing.makeServiceCall(action, (createTagsRequest, client) -> {
                     CreateTagsResponse createTagsResponse = null;
                     try {
                         createTagsResponse = proxyClient
@@ -70,8 +191,11 @@ public class UpdateHandler extends BaseHandlerStd {
                     logger.log(String.format("%s tags added",
                             ResourceModel.TYPE_NAME));
                     return createTagsResponse;
-                })
-                .progress();
+                }))
+                .done(createTagsResponse -> {
+                    context.complete(CallbackContext.Step.ADD_TAGS);
+                    return ProgressEvent.progress(model, context);
+                });
     }
 }
 
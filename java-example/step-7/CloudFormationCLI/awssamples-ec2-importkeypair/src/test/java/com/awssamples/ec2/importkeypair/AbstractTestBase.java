@@ -1,10 +1,15 @@
 package com.awssamples.ec2.importkeypair;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.BeforeEach;
 import software.amazon.awssdk.awscore.AwsRequest;
 import software.amazon.awssdk.awscore.AwsResponse;
 import software.amazon.awssdk.services.ec2.Ec2Client;
@@ -16,6 +21,7 @@ import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
 import software.amazon.cloudformation.proxy.Credentials;
 import software.amazon.cloudformation.proxy.LoggerProxy;
 import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.resource.Serializer;
 
 public class AbstractTestBase {
   protected static final Credentials MOCK_CREDENTIALS;
@@ -23,7 +29,7 @@ public class AbstractTestBase {
 
   protected final String keyName = "foo";
     protected final String keyFingerprint = "654321";
-    protected final String publicKeyMaterial = "123456";
+    protected final String publicKeyMaterial = "ssh-rsa AAAAB3NzaC1yc2EAAAADAQABAAABgQC6a0jSCKqYNW6PPTBKUbAHF7JEq0IkT2mX/Zi3LlzA4yuaMJN8+h3Avsrz/zh0/KfMR2vCrWxWY2w7e9oKm8na08sbMLIVt9w0vhmSF81gxCIoV02Laq8VsvjHnXwNbsYnPH9fPZUO3Qv+mMZByL4reorW+93X5JCB6Hw1+MkLmg1fV4g0g1PPEMy8OpLEdhM5LEj/MxiwJ/uz0DxdZkJhM8EWXcELDrHdryZNrGI7LJ8q0n4NVDQkHIsb1xg2A5qaerEJ5k5ufUeZvPJDbKfXcnKsGG9CCrSxMYkl84gbWjUU0p9WXmLr8yvxNV9U3KaFxHVMTkTw0fQ5pG6f/j7nqiPAO7TTmPrpe86bB7+1YF16m+cWRTsz9+Lxm4EinVzh4BnfhhoqteNZaAv0vPjFSuT6OUEkji74rSAbDndAs47L5BSBHjVfSxN0foRiANfpc26vurdrRUpho637BDUL69XDXLRso/gwmUK04FNUGi/O5GAwVqP1k1LpBOWg9OE= my-key";
     protected final String keyPairId = "key-07a1547691c4a3a22";
     protected final String peerOwnerId = "123456789012";
     protected final String peerRoleArn = MessageFormat.format("arn:aws:iam::{0}:user/user-name-with-path", peerOwnerId);
@@ -44,10 +50,28 @@ public class AbstractTestBase {
       return info;
     }
 
+  // handlers share caches across invocations, which must not carry over from one test to the next
+  @BeforeEach
+  public void clearSharedState() {
+    NotFoundCache.getInstance().clear();
+  }
+
   static {
     MOCK_CREDENTIALS = new Credentials("accessKey", "secretKey", "token");
     logger = new LoggerProxy();
   }
+  /**
+   * @return the context as the next invocation sees it, after the wrapper wrote it out and read it back
+   */
+  static CallbackContext roundTrip(final CallbackContext context) {
+    final Serializer serializer = new Serializer();
+    try {
+      return serializer.deserialize(serializer.serialize(context), new TypeReference<CallbackContext>() { });
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   static ProxyClient<Ec2Client> MOCK_PROXY(
     final AmazonWebServicesClientProxy proxy,
     final Ec2Client sdkClient) {
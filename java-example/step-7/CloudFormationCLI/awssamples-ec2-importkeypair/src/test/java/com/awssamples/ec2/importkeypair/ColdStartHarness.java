@@ -0,0 +1,241 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Measures cold start of the shaded handler jar: for every JVM configuration of a matrix, launches
+ * fresh JVMs that each run {@link ColdStartProbe} against an {@link Ec2StubServer}, and reports the
+ * median time from launch to the first response, time to finish a create and a read, classes
+ * loaded and heap used, next to the first configuration as the baseline. Given several jars, such
+ * as the default and the slim build, it runs the matrix on each and reports their sizes too.
+ *
+ * Run it after packaging with
+ * {@code mvn package -DskipTests && mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.awssamples.ec2.importkeypair.ColdStartHarness -Dexec.args="target/awssamples-ec2-importkeypair-handler-1.0-SNAPSHOT.jar 5"}
+ * where the first argument may list several jars separated by commas, and the optional arguments
+ * after it are the runs per configuration and configurations of
+ * the form {@code "label=-XX:+UseSerialGC -Xshare:off"} replacing the default matrix. The report is
+ * printed and written to {@code target/cold-start-report.md}.
+ */
+public final class ColdStartHarness {
+    static final Map<String, List<String>> DEFAULT_MATRIX = defaultMatrix();
+    private static final int DEFAULT_RUNS = 5;
+    private static final long PROBE_TIMEOUT_SECONDS = 120;
+
+    private ColdStartHarness() {
+    }
+
+    private static Map<String, List<String>> defaultMatrix() {
+        final Map<String, List<String>> matrix = new LinkedHashMap<>();
+        matrix.put("default", Collections.<String>emptyList());
+        matrix.put("C1 only", Collections.singletonList("-XX:TieredStopAtLevel=1"));
+        matrix.put("SerialGC", Collections.singletonList("-XX:+UseSerialGC"));
+        matrix.put("SerialGC, C1 only", Arrays.asList("-XX:+UseSerialGC", "-XX:TieredStopAtLevel=1"));
+        matrix.put("CDS off", Collections.singletonList("-Xshare:off"));
+        return Collections.unmodifiableMap(matrix);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: ColdStartHarness <shaded jar>[,<shaded jar>...] [runs] [label=jvm options]...");
+            System.exit(2);
+        }
+        final List<Path> jars = new ArrayList<>();
+        for (final String jar : args[0].split(",")) {
+            jars.add(Paths.get(jar.trim()));
+        }
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+        final Map<String, List<String>> matrix = args.length > 2
+                ? parseMatrix(Arrays.asList(args).subList(2, args.length)) : DEFAULT_MATRIX;
+
+        final Path model = Files.createTempFile("cold-start-model", ".json");
+        final Ec2StubServer stub = new Ec2StubServer(0, 0);
+        stub.start();
+        final Map<Configuration, List<Result>> results = new LinkedHashMap<>();
+        try {
+            for (final Path jar : jars) {
+                for (final Map.Entry<String, List<String>> options : matrix.entrySet()) {
+                    final Configuration configuration = new Configuration(options.getKey(), jar, Files.size(jar),
+                            options.getValue());
+                    final List<Result> configurationResults = new ArrayList<>();
+                    for (int run = 0; run < runs; run++) {
+                        // the stub keeps what every run imports, and key names must stay unique
+                        Files.write(model, ("{\"KeyName\":\"cold-start-" + (results.size() * runs + run)
+                                + "\",\"PublicKeyMaterial\":\"" + Ec2StubServer.PUBLIC_KEY + "\"}")
+                                .getBytes(StandardCharsets.UTF_8));
+                        configurationResults.add(launch(configuration, stub.port(), model));
+                    }
+                    results.put(configuration, configurationResults);
+                    System.err.printf("%s %s: %d runs done%n", jar.getFileName(), configuration.label, runs);
+                }
+            }
+        } finally {
+            stub.stop();
+            Files.deleteIfExists(model);
+        }
+
+        final String report = report(results);
+        System.out.print(report);
+        final Path reportFile = Paths.get("target", "cold-start-report.md");
+        Files.createDirectories(reportFile.getParent());
+        Files.write(reportFile, report.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Map<String, List<String>> parseMatrix(final List<String> configurations) {
+        final Map<String, List<String>> matrix = new LinkedHashMap<>();
+        for (final String configuration : configurations) {
+            final int separator = configuration.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected label=jvm options, got " + configuration);
+            }
+            final String options = configuration.substring(separator + 1).trim();
+            matrix.put(configuration.substring(0, separator).trim(),
+                    options.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(options.split("\\s+")));
+        }
+        return matrix;
+    }
+
+    private static Result launch(final Configuration configuration, final int port, final Path model)
+            throws Exception {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(configuration.jvmOptions);
+        command.add("-D" + ColdStartProbe.LAUNCHED_AT_PROPERTY + "=" + System.currentTimeMillis());
+        command.add("-cp");
+        // the probe comes from the test classes; everything it drives comes from the jar under test
+        command.add(configuration.jar.toAbsolutePath() + File.pathSeparator
+                + Paths.get(ColdStartProbe.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+        command.add(ColdStartProbe.class.getName());
+        command.add(model.toString());
+
+        final ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+        processBuilder.environment().put(ClientBuilder.ENDPOINT_ENVIRONMENT_VARIABLE, "http://127.0.0.1:" + port);
+        processBuilder.environment().put("AWS_REGION", "us-east-1");
+        final Process process = processBuilder.start();
+        String resultLine = null;
+        final StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(ColdStartProbe.RESULT_PREFIX)) {
+                    resultLine = line.substring(ColdStartProbe.RESULT_PREFIX.length());
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Probe did not finish within " + PROBE_TIMEOUT_SECONDS + " seconds");
+        }
+        if (process.exitValue() != 0 || resultLine == null) {
+            throw new IllegalStateException("Probe failed with exit code " + process.exitValue() + ":\n" + output);
+        }
+        return Result.parse(LocalHandlerServer.MAPPER.readTree(resultLine));
+    }
+
+    static String report(final Map<Configuration, List<Result>> results) {
+        final StringBuilder report = new StringBuilder()
+                .append("| Jar | Jar MiB | Configuration | JVM options | First response ms | vs baseline"
+                        + " | Create + read ms | Classes loaded | Heap used MiB | Status |\n")
+                .append("|---|---:|---|---|---:|---:|---:|---:|---:|---|\n");
+        Long baseline = null;
+        for (final Map.Entry<Configuration, List<Result>> entry : results.entrySet()) {
+            final Configuration configuration = entry.getKey();
+            final List<Result> runs = entry.getValue();
+            final long firstResponse = median(runs, result -> result.firstResponseMillis);
+            if (baseline == null) {
+                baseline = firstResponse;
+            }
+            report.append(String.format(Locale.ROOT,
+                    "| %s | %.1f | %s | %s | %d | %+.1f%% | %d | %d | %.1f | %s |\n",
+                    configuration.jar.getFileName(),
+                    configuration.jarBytes / (1024.0 * 1024.0),
+                    configuration.label,
+                    configuration.jvmOptions.isEmpty() ? "" : "`" + String.join(" ", configuration.jvmOptions) + "`",
+                    firstResponse,
+                    baseline == 0 ? 0.0 : 100.0 * (firstResponse - baseline) / baseline,
+                    median(runs, result -> result.totalMillis),
+                    median(runs, result -> result.loadedClasses),
+                    median(runs, result -> result.heapUsedBytes) / (1024.0 * 1024.0),
+                    runs.isEmpty() ? "" : runs.get(0).status()));
+        }
+        return report.toString();
+    }
+
+    static long median(final List<Result> results, final ToLongFunction<Result> measurement) {
+        if (results.isEmpty()) {
+            return 0;
+        }
+        final long[] values = new long[results.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = measurement.applyAsLong(results.get(i));
+        }
+        Arrays.sort(values);
+        return values.length % 2 == 1 ? values[values.length / 2]
+                : (values[values.length / 2 - 1] + values[values.length / 2]) / 2;
+    }
+
+    /** One row of the report: a jar and the JVM options it is launched with. */
+    static final class Configuration {
+        final String label;
+        final Path jar;
+        final long jarBytes;
+        final List<String> jvmOptions;
+
+        Configuration(final String label, final Path jar, final long jarBytes, final List<String> jvmOptions) {
+            this.label = label;
+            this.jar = jar;
+            this.jarBytes = jarBytes;
+            this.jvmOptions = jvmOptions;
+        }
+    }
+
+    /** The measurements of one probe run. */
+    static final class Result {
+        final long firstResponseMillis;
+        final long totalMillis;
+        final long loadedClasses;
+        final long heapUsedBytes;
+        final String createStatus;
+        final String readStatus;
+
+        Result(final long firstResponseMillis, final long totalMillis, final long loadedClasses,
+                final long heapUsedBytes, final String createStatus, final String readStatus) {
+            this.firstResponseMillis = firstResponseMillis;
+            this.totalMillis = totalMillis;
+            this.loadedClasses = loadedClasses;
+            this.heapUsedBytes = heapUsedBytes;
+            this.createStatus = createStatus;
+            this.readStatus = readStatus;
+        }
+
+        static Result parse(final JsonNode result) {
+            return new Result(result.path("firstResponseMillis").asLong(), result.path("totalMillis").asLong(),
+                    result.path("loadedClasses").asLong(), result.path("heapUsedBytes").asLong(),
+                    result.path("createStatus").asText(), result.path("readStatus").asText());
+        }
+
+        // a run that did not succeed still measured something, but not the path that matters
+        String status() {
+            return "create " + createStatus + ", read " + readStatus;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ColdStartHarnessTest {
+
+    @Test
+    public void parseMatrix_LabelsAndOptions() {
+        final Map<String, List<String>> matrix = ColdStartHarness.parseMatrix(
+                Arrays.asList("baseline=", "serial = -XX:+UseSerialGC  -Xshare:off"));
+
+        assertThat(matrix).containsExactly(
+                entry("baseline", Collections.<String>emptyList()),
+                entry("serial", Arrays.asList("-XX:+UseSerialGC", "-Xshare:off")));
+        assertThatThrownBy(() -> ColdStartHarness.parseMatrix(Collections.singletonList("-Xshare:off")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void report_MediansAndSizesAgainstTheFirstConfiguration() {
+        final Map<ColdStartHarness.Configuration, List<ColdStartHarness.Result>> results = new LinkedHashMap<>();
+        results.put(configuration("default", "handler.jar", 40), Arrays.asList(result(900), result(1000), result(5000)));
+        results.put(configuration("C1 only", "handler.jar", 40), Arrays.asList(result(700), result(800)));
+        results.put(configuration("default", "handler-slim.jar", 10), Arrays.asList(result(600)));
+
+        final String report = ColdStartHarness.report(results);
+
+        assertThat(report.split("\n")).hasSize(5);
+        assertThat(report).contains("| handler.jar | 40.0 | default |  | 1000 | +0.0% |")
+                .contains("| handler.jar | 40.0 | C1 only | `-XX:TieredStopAtLevel=1` | 750 | -25.0% |")
+                .contains("| handler-slim.jar | 10.0 | default |  | 600 | -40.0% |")
+                .contains("create SUCCESS, read SUCCESS");
+    }
+
+    private static ColdStartHarness.Configuration configuration(final String label, final String jar,
+            final long jarMebibytes) {
+        return new ColdStartHarness.Configuration(label, Paths.get(jar), jarMebibytes * 1024 * 1024,
+                ColdStartHarness.DEFAULT_MATRIX.get(label));
+    }
+
+    private static ColdStartHarness.Result result(final long firstResponseMillis) {
+        return new ColdStartHarness.Result(firstResponseMillis, firstResponseMillis + 200, 4000,
+                64L * 1024 * 1024, "SUCCESS", "SUCCESS");
+    }
+
+    private static Map.Entry<String, List<String>> entry(final String key, final List<String> value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
@@ -0,0 +1,86 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * What {@link ColdStartHarness} runs in each fresh JVM: a create of the given model followed by a
+ * read of the key it created, through a new HandlerWrapper, exactly as the first invocations of a
+ * new Lambda container would. Prints one line with the measurements, after everything else the
+ * handlers print.
+ */
+public final class ColdStartProbe {
+    static final String RESULT_PREFIX = "cold-start-result ";
+    // epoch millis at which the harness launched this JVM, so JVM start-up counts towards the first response
+    static final String LAUNCHED_AT_PROPERTY = "coldstart.launchedAt";
+    private static final int MAX_INVOCATIONS_PER_REQUEST = 5;
+
+    private final HandlerWrapper wrapper = new HandlerWrapper();
+    private final Context context = new LocalHandlerServer.LocalContext();
+    private final ObjectNode credentials = LocalHandlerServer.MAPPER.createObjectNode();
+    private long firstResponseAt;
+
+    private ColdStartProbe() {
+        credentials.put("accessKeyId", "accessKey");
+        credentials.put("secretAccessKey", "secretKey");
+        credentials.put("sessionToken", "token");
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final long launchedAt = Long.getLong(LAUNCHED_AT_PROPERTY, ManagementFactory.getRuntimeMXBean().getStartTime());
+        final JsonNode model = LocalHandlerServer.MAPPER.readTree(Files.readAllBytes(Paths.get(args[0])));
+
+        final ColdStartProbe probe = new ColdStartProbe();
+        final JsonNode created = probe.run("CREATE", model);
+        final ObjectNode identifier = LocalHandlerServer.MAPPER.createObjectNode();
+        identifier.set("KeyPairId", created.path("resourceModel").path("KeyPairId"));
+        final JsonNode read = probe.run("READ", identifier);
+        final long finishedAt = System.currentTimeMillis();
+
+        final ObjectNode result = LocalHandlerServer.MAPPER.createObjectNode();
+        result.put("firstResponseMillis", probe.firstResponseAt - launchedAt);
+        result.put("totalMillis", finishedAt - launchedAt);
+        result.put("loadedClasses", ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+        result.put("heapUsedBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        result.put("createStatus", created.path("status").asText());
+        result.put("readStatus", read.path("status").asText());
+        System.out.println(RESULT_PREFIX + LocalHandlerServer.MAPPER.writeValueAsString(result));
+    }
+
+    /**
+     * Invokes the handler again with the context it hands back until the request is no longer in
+     * progress, as CloudFormation would.
+     */
+    private JsonNode run(final String action, final JsonNode model) throws IOException {
+        final String clientRequestToken = UUID.randomUUID().toString();
+        JsonNode desiredResourceState = model;
+        JsonNode callbackContext = null;
+        JsonNode response = null;
+        for (int i = 0; i < MAX_INVOCATIONS_PER_REQUEST; i++) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            wrapper.testEntrypoint(new ByteArrayInputStream(LocalHandlerServer.payload(credentials, "us-east-1", action,
+                    clientRequestToken, desiredResourceState, callbackContext)), output, context);
+            if (firstResponseAt == 0) {
+                firstResponseAt = System.currentTimeMillis();
+            }
+            response = LocalHandlerServer.MAPPER.readTree(output.toByteArray());
+            if (!"IN_PROGRESS".equals(response.path("status").asText())) {
+                return response;
+            }
+            callbackContext = response.get("callbackContext");
+            if (response.hasNonNull("resourceModel")) {
+                desiredResourceState = response.get("resourceModel");
+            }
+        }
+        return response;
+    }
+}
@@ -0,0 +1,88 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.LambdaWrapper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConnectionPrewarmTest {
+
+    @AfterEach
+    public void tear_down() {
+        EmbeddedMetrics.logTo(null);
+    }
+
+    @Test
+    public void warm_ConnectsThroughTheSharedClient() throws IOException {
+        final Ec2StubServer stub = new Ec2StubServer(0, 0);
+        stub.start();
+        try {
+            final ConnectionPrewarm.Result result = ConnectionPrewarm.warm(stub.endpoint(), LambdaWrapper.HTTP_CLIENT);
+
+            assertThat(result.succeeded).isTrue();
+            assertThat(result.resolveMillis).isNotNegative();
+            assertThat(result.connectMillis).isNotNegative();
+        } finally {
+            stub.stop();
+        }
+    }
+
+    @Test
+    public void warm_UnreachableEndpointIsNotAnError() throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+
+        final ConnectionPrewarm.Result result = ConnectionPrewarm.warm(URI.create("http://127.0.0.1:" + port),
+                LambdaWrapper.HTTP_CLIENT);
+
+        assertThat(result.succeeded).isFalse();
+    }
+
+    @Test
+    public void metricLine_FirstCallWithAndWithoutPrewarm() throws IOException {
+        final JsonNode cold = LocalHandlerServer.MAPPER.readTree(
+                ConnectionPrewarm.metricLine(null, "ImportKeyPair", 850, 1700000000000L));
+        final JsonNode warm = LocalHandlerServer.MAPPER.readTree(ConnectionPrewarm.metricLine(
+                new ConnectionPrewarm.Result(true, 12, 140), "DescribeKeyPairs", 95, 1700000000000L));
+
+        assertThat(cold.path("_aws").path("Timestamp").asLong()).isEqualTo(1700000000000L);
+        assertThat(cold.path("_aws").path("CloudWatchMetrics").get(0).path("Namespace").asText())
+                .isEqualTo(EmbeddedMetrics.NAMESPACE);
+        assertThat(cold.path("_aws").path("CloudWatchMetrics").get(0).path("Metrics")).hasSize(1);
+        assertThat(cold.path("Prewarmed").asText()).isEqualTo("false");
+        assertThat(cold.path("Operation").asText()).isEqualTo("ImportKeyPair");
+        assertThat(cold.path("FirstEc2CallLatency").asLong()).isEqualTo(850);
+        assertThat(warm.path("_aws").path("CloudWatchMetrics").get(0).path("Metrics")).hasSize(3);
+        assertThat(warm.path("Prewarmed").asText()).isEqualTo("true");
+        assertThat(warm.path("FirstEc2CallLatency").asLong()).isEqualTo(95);
+        assertThat(warm.path("PrewarmResolveLatency").asLong()).isEqualTo(12);
+        assertThat(warm.path("PrewarmConnectLatency").asLong()).isEqualTo(140);
+    }
+
+    @Test
+    public void recordFirstCall_OnlyOncePerContainer() throws IOException {
+        final List<String> metricLines = new ArrayList<>();
+        EmbeddedMetrics.logTo(metricLines::add);
+
+        ConnectionPrewarm.recordFirstCall("DescribeKeyPairs", 0);
+        ConnectionPrewarm.recordFirstCall("DescribeKeyPairs", 0);
+
+        assertThat(ConnectionPrewarm.isFirstCallPending()).isFalse();
+        // another test may have made the first call of this JVM already
+        assertThat(metricLines).hasSizeLessThanOrEqualTo(1);
+        for (final String line : metricLines) {
+            assertThat(LocalHandlerServer.MAPPER.readTree(line).path("FirstEc2CallLatency").asLong()).isZero();
+        }
+    }
+}
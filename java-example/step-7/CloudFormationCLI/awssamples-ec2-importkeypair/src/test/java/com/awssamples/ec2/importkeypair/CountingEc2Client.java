@@ -0,0 +1,55 @@
+package com.awssamples.ec2.importkeypair;
+
+import software.amazon.awssdk.services.ec2.Ec2Client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wraps a stubbed Ec2Client and counts the calls made through it per EC2 operation, named the way
+ * the API names them (DescribeKeyPairs rather than describeKeyPairs).
+ */
+final class CountingEc2Client implements InvocationHandler {
+    private final Ec2Client delegate;
+    private final Map<String, Integer> counts = new TreeMap<>();
+    private final Ec2Client client;
+
+    CountingEc2Client(final Ec2Client delegate) {
+        this.delegate = delegate;
+        this.client = (Ec2Client) Proxy.newProxyInstance(Ec2Client.class.getClassLoader(),
+                new Class<?>[] {Ec2Client.class}, this);
+    }
+
+    Ec2Client client() {
+        return client;
+    }
+
+    /** @return the calls made since the last reset, by operation */
+    synchronized Map<String, Integer> counts() {
+        return new TreeMap<>(counts);
+    }
+
+    synchronized void reset() {
+        counts.clear();
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getDeclaringClass() != Object.class && method.getParameterCount() == 1
+                && !"close".equals(method.getName())) {
+            final String operation = Character.toUpperCase(method.getName().charAt(0)) + method.getName().substring(1);
+            synchronized (this) {
+                counts.merge(operation, 1, Integer::sum);
+            }
+        }
+        try {
+            return method.invoke(delegate, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
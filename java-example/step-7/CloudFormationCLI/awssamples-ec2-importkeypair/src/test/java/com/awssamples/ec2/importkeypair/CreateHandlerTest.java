@@ -10,10 +10,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 
 
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ec2.model.CreateTagsRequest;
+import software.amazon.awssdk.services.ec2.model.CreateTagsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
 import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
 import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.OperationStatus;
 import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
@@ -21,11 +29,13 @@ import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
 
 
 import java.time.Duration;
+import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -86,6 +96,7 @@ public class CreateHandlerTest extends AbstractTestBase {
 
         assertThat(response).isNotNull();
         assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(this.keyPairId);
         assertThat(response.getCallbackDelaySeconds()).isEqualTo(0);
         assertThat(response.getResourceModels()).isNull();
         assertThat(response.getMessage()).isNull();
@@ -125,6 +136,7 @@ public class CreateHandlerTest extends AbstractTestBase {
 
         assertThat(response).isNotNull();
         assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(this.keyPairId);
         assertThat(response.getCallbackDelaySeconds()).isEqualTo(0);
         assertThat(response.getResourceModels()).isNull();
         assertThat(response.getMessage()).isNull();
@@ -133,5 +145,302 @@ public class CreateHandlerTest extends AbstractTestBase {
         verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
         verify(ec2Client, atLeastOnce()).serviceName();
     }
-}
 
+    @Test
+    public void handleRequest_InvalidTagFailsBeforeImport() {
+        final CreateHandler handler = new CreateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .tags(Collections.singletonList(Tag.builder().key("").value("value").build()))
+                .build();
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.InvalidRequest);
+        assertThat(response.getMessage()).isNotEmpty();
+    }
+
+    @Test
+    public void handleRequest_InvalidKeyMaterialFailsBeforeImport() {
+        final CreateHandler handler = new CreateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial("invalid")
+                .build();
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.InvalidRequest);
+        assertThat(response.getMessage()).contains("PublicKeyMaterial");
+    }
+
+    @Test
+    public void handleRequest_DuplicateWithSameMaterialIsAdopted() {
+        final CreateHandler handler = new CreateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .tags(this.tags)
+                .build();
+
+        when(proxyClient.client().importKeyPair(any(ImportKeyPairRequest.class))).thenThrow(duplicate());
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(existingKeyPair("12:a9:21:b8:80:6a:f0:a3:4a:4d:08:74:29:7f:c6:5e"));
+        when(proxyClient.client().createTags(any(CreateTagsRequest.class))).thenReturn(CreateTagsResponse.builder().build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(this.keyPairId);
+        assertThat(response.getResourceModel().getKeyFingerprint()).isEqualTo("12:a9:21:b8:80:6a:f0:a3:4a:4d:08:74:29:7f:c6:5e");
+
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client).createTags(any(CreateTagsRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_DuplicateWithDifferentMaterialFails() {
+        final CreateHandler handler = new CreateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .tags(this.tags)
+                .build();
+
+        when(proxyClient.client().importKeyPair(any(ImportKeyPairRequest.class))).thenThrow(duplicate());
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(existingKeyPair("00:11:22:33:44:55:66:77:88:99:aa:bb:cc:dd:ee:ff"));
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.AlreadyExists);
+
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client, never()).createTags(any(CreateTagsRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_DuplicateDeletedBeforeDescribeFails() {
+        final CreateHandler handler = new CreateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .build();
+
+        when(proxyClient.client().importKeyPair(any(ImportKeyPairRequest.class))).thenThrow(duplicate());
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.AlreadyExists);
+
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_KeyPairQuotaReportedAsServiceLimit() {
+        final CreateHandler handler = new CreateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .build();
+
+        when(proxyClient.client().importKeyPair(any(ImportKeyPairRequest.class))).thenThrow(Ec2Exception.builder()
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .errorCode("KeyPairLimitExceeded")
+                        .errorMessage("Maximum of 5000 keypairs reached.")
+                        .build())
+                .statusCode(400)
+                .build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.ServiceLimitExceeded);
+
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    private Ec2Exception duplicate() {
+        return (Ec2Exception) Ec2Exception.builder()
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .errorCode("InvalidKeyPair.Duplicate")
+                        .errorMessage("The keypair '" + this.keyName + "' already exists.")
+                        .build())
+                .build();
+    }
+
+    private DescribeKeyPairsResponse existingKeyPair(final String fingerprint) {
+        return DescribeKeyPairsResponse.builder()
+                .keyPairs(KeyPairInfo.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .keyFingerprint(fingerprint)
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void handleRequest_ReinvocationReusesImportedKey() {
+        final CreateHandler handler = new CreateHandler();
+
+        // left by an invocation that imported the key and had additional regions to retry
+        final CallbackContext context = new CallbackContext();
+        context.setKeyPairId(this.keyPairId);
+        context.setClientRequestToken("token");
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(existingKeyPair(this.keyFingerprint));
+
+        // CloudFormation re-invokes with the model it was first given and the context it got back
+        final ResourceHandlerRequest<ResourceModel> retry = ResourceHandlerRequest.<ResourceModel>builder()
+                .clientRequestToken("token")
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .build())
+                .build();
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, retry, roundTrip(context), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(this.keyPairId);
+        assertThat(response.getResourceModel().getKeyFingerprint()).isEqualTo(this.keyFingerprint);
+
+        verify(ec2Client, never()).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_ImportedKeyDeletedBeforeReinvocation() {
+        final CreateHandler handler = new CreateHandler();
+
+        final CallbackContext context = new CallbackContext();
+        context.setKeyPairId(this.keyPairId);
+        context.setClientRequestToken("token");
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .clientRequestToken("token")
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .build())
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, context, proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.NotFound);
+
+        verify(ec2Client, never()).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_ContextFromAnotherRequestIsIgnored() {
+        final CreateHandler handler = new CreateHandler();
+
+        final CallbackContext context = new CallbackContext();
+        context.setKeyPairId("key-0123456789abcdef0");
+        context.setClientRequestToken("another-token");
+        when(proxyClient.client().importKeyPair(any(ImportKeyPairRequest.class))).thenReturn(ImportKeyPairResponse.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .keyPairId(this.keyPairId)
+                .build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .clientRequestToken("token")
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .build())
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, context, proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(this.keyPairId);
+
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_ImportClearsNotFoundCache() {
+        final CreateHandler handler = new CreateHandler();
+
+        when(proxyClient.client().importKeyPair(any(ImportKeyPairRequest.class))).thenReturn(ImportKeyPairResponse.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .keyPairId(this.keyPairId)
+                .build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .build())
+                .build();
+        NotFoundCache.getInstance().markMissing(request, this.keyPairId);
+
+        handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(NotFoundCache.getInstance().isMissing(request, this.keyPairId)).isFalse();
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client, atLeastOnce()).serviceName();
+    }
+}
@@ -8,11 +8,11 @@ import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
 import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.OperationStatus;
 import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
 import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
-import software.amazon.cloudformation.exceptions.CfnGeneralServiceException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -20,8 +20,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
@@ -110,14 +110,20 @@ public class DeleteHandlerTest extends AbstractTestBase {
                 .tags(this.tags)
                 .keyPairId(this.keyPairId)
                 .build();
-                
-        
+
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+
         final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
                 .desiredResourceState(model)
                 .build();
 
-        assertThrows(CfnGeneralServiceException.class,
-                () -> handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger));
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.NotFound);
+        verify(sdkClient, never()).deleteKeyPair(any(DeleteKeyPairRequest.class));
     }
     
     @Test
@@ -141,5 +147,34 @@ public class DeleteHandlerTest extends AbstractTestBase {
         assertThat(response.getMessage()).isNotEmpty();
         assertThat(response.getErrorCode()).isNotNull();
     }
-}
 
+    @Test
+    public void handleRequest_RepeatedDeleteSkipsDescribe() {
+        final DeleteHandler handler = new DeleteHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyPairId(this.keyPairId)
+                .build();
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().keyPairs(this.getKeyPairInfo(model)).build());
+        when(proxyClient.client().deleteKeyPair(any(DeleteKeyPairRequest.class)))
+                .thenReturn(DeleteKeyPairResponse.builder().build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        assertThat(handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger).getStatus())
+                .isEqualTo(OperationStatus.SUCCESS);
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        // the key pair this container just deleted is known to be gone
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.NotFound);
+        verify(sdkClient, times(1)).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(sdkClient, times(1)).deleteKeyPair(any(DeleteKeyPairRequest.class));
+        verify(sdkClient, atLeastOnce()).serviceName();
+    }
+}
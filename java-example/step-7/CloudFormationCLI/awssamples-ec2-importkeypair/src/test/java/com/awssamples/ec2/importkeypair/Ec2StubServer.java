@@ -0,0 +1,431 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local EC2 speaking enough of the EC2 query protocol for the handlers: ImportKeyPair,
+ * DescribeKeyPairs by id, name and the key-pair-id, key-name, fingerprint, tag: and tag-key
+ * filters, DeleteKeyPair, CreateTags and DeleteTags, with key pairs kept in memory. An unmodified
+ * Ec2Client pointed at it with an endpoint override, or the handlers through EC2_ENDPOINT, go
+ * through marshalling, signing, HTTP and unmarshalling exactly as against EC2, so benchmarks and
+ * load tests measure the whole SDK stack. Every response is held back by the configured latency,
+ * on a thread of its own so concurrent calls overlap as they would against EC2.
+ *
+ * Run it on its own for a load test with
+ * {@code mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.awssamples.ec2.importkeypair.Ec2StubServer -Dexec.args="8080 20"}
+ * where the arguments are the port and the latency in milliseconds.
+ */
+public final class Ec2StubServer {
+    /** An RSA public key any caller can import. */
+    static final String PUBLIC_KEY = "ssh-rsa AAAAB3NzaC1yc2EAAAADAQABAAABgQC6a0jSCKqYNW6PPTBKUbAHF7JEq0IkT2mX/Zi3Ll"
+            + "zA4yuaMJN8+h3Avsrz/zh0/KfMR2vCrWxWY2w7e9oKm8na08sbMLIVt9w0vhmSF81gxCIoV02Laq8VsvjHnXwNbsYnPH9fPZUO3Qv+"
+            + "mMZByL4reorW+93X5JCB6Hw1+MkLmg1fV4g0g1PPEMy8OpLEdhM5LEj/MxiwJ/uz0DxdZkJhM8EWXcELDrHdryZNrGI7LJ8q0n4NVD"
+            + "QkHIsb1xg2A5qaerEJ5k5ufUeZvPJDbKfXcnKsGG9CCrSxMYkl84gbWjUU0p9WXmLr8yvxNV9U3KaFxHVMTkTw0fQ5pG6f/j7nqiPAO"
+            + "7TTmPrpe86bB7+1YF16m+cWRTsz9+Lxm4EinVzh4BnfhhoqteNZaAv0vPjFSuT6OUEkji74rSAbDndAs47L5BSBHjVfSxN0foRiANf"
+            + "pc26vurdrRUpho637BDUL69XDXLRso/gwmUK04FNUGi/O5GAwVqP1k1LpBOWg9OE= stub";
+    private static final String NAMESPACE = "http://ec2.amazonaws.com/doc/2016-11-15/";
+    private static final int DEFAULT_PORT = 8080;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "ec2-stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // guarded by itself, in import order as DescribeKeyPairs lists them
+    private final Map<String, KeyPair> keyPairs = new LinkedHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<>();
+    private volatile long latencyMillis;
+
+    Ec2StubServer(final int port, final long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        final Ec2StubServer stub = new Ec2StubServer(port, latencyMillis);
+        stub.start();
+        System.out.println("EC2 stub listening on " + stub.endpoint() + " with " + latencyMillis
+                + " ms latency, set EC2_ENDPOINT to it");
+        Thread.currentThread().join();
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    URI endpoint() {
+        return URI.create("http://127.0.0.1:" + port());
+    }
+
+    void latencyMillis(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Imports a key pair without a call, for fixtures that must not warm up the client under test.
+     * @return the id of the key pair
+     */
+    String seed(final String keyName, final Map<String, String> tags) {
+        final KeyPair keyPair = new KeyPair(String.format("key-%017x", sequence.incrementAndGet()), keyName,
+                fingerprint(PUBLIC_KEY));
+        keyPair.tags.putAll(tags);
+        synchronized (keyPairs) {
+            keyPairs.put(keyPair.id, keyPair);
+        }
+        return keyPair.id;
+    }
+
+    /** @return how many calls of the action the stub has answered, errors included */
+    long calls(final String action) {
+        final AtomicLong count = calls.get(action);
+        return count == null ? 0 : count.get();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final Map<String, String> parameters = parseForm(new String(
+                    LocalHandlerServer.readFully(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            final String action = String.valueOf(parameters.get("Action"));
+            calls.computeIfAbsent(action, name -> new AtomicLong()).incrementAndGet();
+            final String requestId = "stub-" + sequence.incrementAndGet();
+            int status = 200;
+            String response;
+            try {
+                response = dispatch(action, parameters, requestId);
+            } catch (final StubException e) {
+                status = 400;
+                response = "<Response><Errors><Error><Code>" + e.code + "</Code><Message>" + escape(e.getMessage())
+                        + "</Message></Error></Errors><RequestID>" + requestId + "</RequestID></Response>";
+            }
+            pause();
+            respond(exchange, status, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String dispatch(final String action, final Map<String, String> parameters, final String requestId)
+            throws StubException {
+        switch (action) {
+            case "ImportKeyPair":
+                return importKeyPair(parameters, requestId);
+            case "DescribeKeyPairs":
+                return describeKeyPairs(parameters, requestId);
+            case "DeleteKeyPair":
+                return deleteKeyPair(parameters, requestId);
+            case "CreateTags":
+                return createTags(parameters, requestId);
+            case "DeleteTags":
+                return deleteTags(parameters, requestId);
+            default:
+                throw new StubException("InvalidAction", "The action " + action + " is not valid for this web service.");
+        }
+    }
+
+    private String importKeyPair(final Map<String, String> parameters, final String requestId)
+            throws StubException {
+        final String keyName = parameters.get("KeyName");
+        final String material = parameters.get("PublicKeyMaterial");
+        if (keyName == null || material == null) {
+            throw new StubException("MissingParameter", "The request must contain the parameters KeyName and PublicKeyMaterial");
+        }
+        final String fingerprint;
+        try {
+            fingerprint = fingerprint(new String(Base64.getDecoder().decode(material), StandardCharsets.UTF_8));
+        } catch (final IllegalArgumentException e) {
+            throw new StubException("InvalidKey.Format", "Key is not in valid OpenSSH public key format");
+        }
+        final KeyPair keyPair = new KeyPair(String.format("key-%017x", sequence.incrementAndGet()), keyName,
+                fingerprint);
+        for (final Map<String, String> specification : indexed(parameters, "TagSpecification")) {
+            if ("key-pair".equals(specification.get("ResourceType"))) {
+                for (final Map<String, String> tag : indexed(specification, "Tag")) {
+                    keyPair.tags.put(tag.get("Key"), tag.getOrDefault("Value", ""));
+                }
+            }
+        }
+        synchronized (keyPairs) {
+            for (final KeyPair existing : keyPairs.values()) {
+                if (existing.name.equals(keyName)) {
+                    throw new StubException("InvalidKeyPair.Duplicate", "The keypair '" + keyName + "' already exists.");
+                }
+            }
+            keyPairs.put(keyPair.id, keyPair);
+            return "<ImportKeyPairResponse xmlns=\"" + NAMESPACE + "\"><requestId>" + requestId + "</requestId>"
+                    + keyPair.toXml() + "</ImportKeyPairResponse>";
+        }
+    }
+
+    private String describeKeyPairs(final Map<String, String> parameters, final String requestId)
+            throws StubException {
+        final List<String> ids = values(parameters, "KeyPairId");
+        final List<String> names = values(parameters, "KeyName");
+        final List<Map<String, String>> filters = indexed(parameters, "Filter");
+        final StringBuilder xml = new StringBuilder("<DescribeKeyPairsResponse xmlns=\"").append(NAMESPACE)
+                .append("\"><requestId>").append(requestId).append("</requestId><keySet>");
+        synchronized (keyPairs) {
+            for (final String id : ids) {
+                if (!keyPairs.containsKey(id)) {
+                    throw new StubException("InvalidKeyPair.NotFound", "The key pair '" + id + "' does not exist");
+                }
+            }
+            for (final String name : names) {
+                if (find(name) == null) {
+                    throw new StubException("InvalidKeyPair.NotFound", "The key pair '" + name + "' does not exist");
+                }
+            }
+            for (final KeyPair keyPair : keyPairs.values()) {
+                if ((ids.isEmpty() || ids.contains(keyPair.id))
+                        && (names.isEmpty() || names.contains(keyPair.name))
+                        && matches(keyPair, filters)) {
+                    xml.append("<item>").append(keyPair.toXml()).append("</item>");
+                }
+            }
+        }
+        return xml.append("</keySet></DescribeKeyPairsResponse>").toString();
+    }
+
+    private String deleteKeyPair(final Map<String, String> parameters, final String requestId) {
+        final String id = parameters.get("KeyPairId");
+        final String name = parameters.get("KeyName");
+        synchronized (keyPairs) {
+            final KeyPair keyPair = id != null ? keyPairs.get(id) : find(name);
+            // like EC2, deleting a key pair that does not exist succeeds
+            if (keyPair != null) {
+                keyPairs.remove(keyPair.id);
+            }
+        }
+        return "<DeleteKeyPairResponse xmlns=\"" + NAMESPACE + "\"><requestId>" + requestId
+                + "</requestId><return>true</return></DeleteKeyPairResponse>";
+    }
+
+    private String createTags(final Map<String, String> parameters, final String requestId) throws StubException {
+        final List<Map<String, String>> tags = indexed(parameters, "Tag");
+        synchronized (keyPairs) {
+            for (final KeyPair keyPair : resources(parameters)) {
+                for (final Map<String, String> tag : tags) {
+                    keyPair.tags.put(tag.get("Key"), tag.getOrDefault("Value", ""));
+                }
+            }
+        }
+        return "<CreateTagsResponse xmlns=\"" + NAMESPACE + "\"><requestId>" + requestId
+                + "</requestId><return>true</return></CreateTagsResponse>";
+    }
+
+    private String deleteTags(final Map<String, String> parameters, final String requestId) throws StubException {
+        final List<Map<String, String>> tags = indexed(parameters, "Tag");
+        synchronized (keyPairs) {
+            for (final KeyPair keyPair : resources(parameters)) {
+                if (tags.isEmpty()) {
+                    keyPair.tags.clear();
+                }
+                for (final Map<String, String> tag : tags) {
+                    // with a value, the tag is only deleted if it still has that value
+                    final String value = tag.get("Value");
+                    if (value == null || value.equals(keyPair.tags.get(tag.get("Key")))) {
+                        keyPair.tags.remove(tag.get("Key"));
+                    }
+                }
+            }
+        }
+        return "<DeleteTagsResponse xmlns=\"" + NAMESPACE + "\"><requestId>" + requestId
+                + "</requestId><return>true</return></DeleteTagsResponse>";
+    }
+
+    // called with keyPairs held
+    private List<KeyPair> resources(final Map<String, String> parameters) throws StubException {
+        final List<KeyPair> resources = new ArrayList<>();
+        for (final String id : values(parameters, "ResourceId")) {
+            final KeyPair keyPair = keyPairs.get(id);
+            if (keyPair == null) {
+                throw new StubException("InvalidKeyPair.NotFound", "The key pair ID '" + id + "' does not exist");
+            }
+            resources.add(keyPair);
+        }
+        return resources;
+    }
+
+    // called with keyPairs held
+    private KeyPair find(final String name) {
+        for (final KeyPair keyPair : keyPairs.values()) {
+            if (keyPair.name.equals(name)) {
+                return keyPair;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(final KeyPair keyPair, final List<Map<String, String>> filters)
+            throws StubException {
+        for (final Map<String, String> filter : filters) {
+            final String name = String.valueOf(filter.get("Name"));
+            final List<String> accepted = values(filter, "Value");
+            final boolean match;
+            if ("key-pair-id".equals(name)) {
+                match = accepted.contains(keyPair.id);
+            } else if ("key-name".equals(name)) {
+                match = accepted.contains(keyPair.name);
+            } else if ("fingerprint".equals(name)) {
+                match = accepted.contains(keyPair.fingerprint);
+            } else if ("tag-key".equals(name)) {
+                match = accepted.stream().anyMatch(keyPair.tags::containsKey);
+            } else if (name.startsWith("tag:")) {
+                match = accepted.contains(keyPair.tags.get(name.substring("tag:".length())));
+            } else {
+                throw new StubException("InvalidParameterValue", "The filter '" + name + "' is invalid");
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void pause() {
+        final long latency = latencyMillis;
+        if (latency > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return the values of a list parameter such as KeyPairId.1, KeyPairId.2, in order */
+    static List<String> values(final Map<String, String> parameters, final String prefix) {
+        final List<String> values = new ArrayList<>();
+        for (int index = 1; parameters.containsKey(prefix + "." + index); index++) {
+            values.add(parameters.get(prefix + "." + index));
+        }
+        return values;
+    }
+
+    /**
+     * @return the members of a list of structures such as Filter.1.Name, Filter.1.Value.1, as one
+     *         map per member with the prefix and index stripped from the names
+     */
+    static List<Map<String, String>> indexed(final Map<String, String> parameters, final String prefix) {
+        final List<Map<String, String>> members = new ArrayList<>();
+        for (int index = 1; ; index++) {
+            final String memberPrefix = prefix + "." + index + ".";
+            final Map<String, String> member = new LinkedHashMap<>();
+            for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+                if (parameter.getKey().startsWith(memberPrefix)) {
+                    member.put(parameter.getKey().substring(memberPrefix.length()), parameter.getValue());
+                }
+            }
+            if (member.isEmpty()) {
+                return members;
+            }
+            members.add(member);
+        }
+    }
+
+    static Map<String, String> parseForm(final String body) throws IOException {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        for (final String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int separator = pair.indexOf('=');
+            final String name = separator < 0 ? pair : pair.substring(0, separator);
+            final String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    // the fingerprint EC2 assigns, computed the same way the handler checks it
+    private static String fingerprint(final String material) {
+        final KeyMaterialHelper.PublicKeyBlob key = KeyMaterialHelper.parse(material);
+        if (key == null) {
+            throw new IllegalArgumentException("Not a public key");
+        }
+        return KeyMaterialHelper.fingerprint(key);
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String xml) throws IOException {
+        final byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml;charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static final class KeyPair {
+        final String id;
+        final String name;
+        final String fingerprint;
+        final Map<String, String> tags = new LinkedHashMap<>();
+
+        KeyPair(final String id, final String name, final String fingerprint) {
+            this.id = id;
+            this.name = name;
+            this.fingerprint = fingerprint;
+        }
+
+        String toXml() {
+            final StringBuilder xml = new StringBuilder()
+                    .append("<keyPairId>").append(id).append("</keyPairId>")
+                    .append("<keyFingerprint>").append(fingerprint).append("</keyFingerprint>")
+                    .append("<keyName>").append(escape(name)).append("</keyName><tagSet>");
+            for (final Map.Entry<String, String> tag : tags.entrySet()) {
+                xml.append("<item><key>").append(escape(tag.getKey())).append("</key><value>")
+                        .append(escape(tag.getValue())).append("</value></item>");
+            }
+            return xml.append("</tagSet>").toString();
+        }
+    }
+
+    private static final class StubException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final String code;
+
+        StubException(final String code, final String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
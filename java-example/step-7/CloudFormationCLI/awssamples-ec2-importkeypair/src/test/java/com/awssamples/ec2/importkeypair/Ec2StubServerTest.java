@@ -0,0 +1,174 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
+import software.amazon.cloudformation.LambdaWrapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class Ec2StubServerTest {
+
+    private Ec2StubServer stub;
+    private Ec2Client ec2Client;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        stub = new Ec2StubServer(0, 0);
+        stub.start();
+        ec2Client = Ec2Client.builder()
+                .httpClient(LambdaWrapper.HTTP_CLIENT)
+                .endpointOverride(stub.endpoint())
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("accessKey", "secretKey")))
+                .build();
+    }
+
+    @AfterEach
+    public void tear_down() {
+        ec2Client.close();
+        stub.stop();
+    }
+
+    @Test
+    public void importedKeyPair_IsDescribedByTheHandlersRequests() {
+        final ImportKeyPairResponse imported = ec2Client.importKeyPair(Translator.translateToCreateRequest(
+                ResourceModel.builder()
+                        .keyName("foo")
+                        .publicKeyMaterial(Ec2StubServer.PUBLIC_KEY)
+                        .tags(Collections.singletonList(Tag.builder().key("team").value("blue").build()))
+                        .build()));
+        ec2Client.importKeyPair(request -> request
+                .keyName("bar")
+                .publicKeyMaterial(SdkBytes.fromUtf8String(Ec2StubServer.PUBLIC_KEY)));
+
+        final DescribeKeyPairsResponse read = ec2Client.describeKeyPairs(Translator.translateToReadRequest(
+                ResourceModel.builder().keyPairId(imported.keyPairId()).build()));
+
+        assertThat(imported.keyPairId()).matches("key-[0-9a-f]{17}");
+        assertThat(imported.keyFingerprint()).isNotEmpty();
+        assertThat(read.keyPairs()).hasSize(1);
+        final KeyPairInfo keyPair = read.keyPairs().get(0);
+        assertThat(keyPair.keyPairId()).isEqualTo(imported.keyPairId());
+        assertThat(keyPair.keyName()).isEqualTo("foo");
+        assertThat(keyPair.keyFingerprint()).isEqualTo(imported.keyFingerprint());
+        assertThat(keyPair.tags()).hasSize(1);
+        assertThat(keyPair.tags().get(0).key()).isEqualTo("team");
+        assertThat(keyPair.tags().get(0).value()).isEqualTo("blue");
+    }
+
+    @Test
+    public void describeKeyPairs_AppliesEveryFilter() {
+        stub.seed("foo", Collections.singletonMap("team", "blue"));
+        stub.seed("bar", Collections.singletonMap("team", "red"));
+        final String untagged = stub.seed("baz", Collections.<String, String>emptyMap());
+
+        assertThat(names(ec2Client.describeKeyPairs(request -> { }))).containsExactly("foo", "bar", "baz");
+        assertThat(names(ec2Client.describeKeyPairs(Translator.translateToListRequest(ResourceModel.builder()
+                .tags(Collections.singletonList(Tag.builder().key("team").value("red").build()))
+                .build())))).containsExactly("bar");
+        assertThat(names(ec2Client.describeKeyPairs(Translator.translateToListRequest(ResourceModel.builder()
+                .tags(Collections.singletonList(Tag.builder().key("team").build()))
+                .build())))).containsExactly("foo", "bar");
+        assertThat(names(ec2Client.describeKeyPairs(Translator.translateToReadByNameRequest(ResourceModel.builder()
+                .keyName("baz")
+                .build())))).containsExactly("baz");
+        assertThat(names(ec2Client.describeKeyPairs(request -> request.keyNames("foo", "baz"))))
+                .containsExactly("foo", "baz");
+        assertThat(names(ec2Client.describeKeyPairs(request -> request.keyPairIds(untagged))))
+                .containsExactly("baz");
+        assertThat(names(ec2Client.describeKeyPairs(Translator.translateToReadRequest(ResourceModel.builder()
+                .keyPairId("key-00000000000000000")
+                .build())))).isEmpty();
+    }
+
+    @Test
+    public void missingOrDuplicateKeyPairs_AreEc2Errors() {
+        ec2Client.importKeyPair(request -> request
+                .keyName("foo")
+                .publicKeyMaterial(SdkBytes.fromUtf8String(Ec2StubServer.PUBLIC_KEY)));
+
+        assertThatThrownBy(() -> ec2Client.importKeyPair(request -> request
+                .keyName("foo")
+                .publicKeyMaterial(SdkBytes.fromUtf8String(Ec2StubServer.PUBLIC_KEY))))
+                .isInstanceOfSatisfying(Ec2Exception.class, e -> {
+                    assertThat(e.awsErrorDetails().errorCode()).isEqualTo("InvalidKeyPair.Duplicate");
+                    assertThat(e.statusCode()).isEqualTo(400);
+                });
+        assertThatThrownBy(() -> ec2Client.describeKeyPairs(request -> request.keyPairIds("key-00000000000000000")))
+                .isInstanceOfSatisfying(Ec2Exception.class,
+                        e -> assertThat(e.awsErrorDetails().errorCode()).isEqualTo("InvalidKeyPair.NotFound"));
+        assertThatThrownBy(() -> ec2Client.createTags(request -> request
+                .resources("key-00000000000000000")
+                .tags(software.amazon.awssdk.services.ec2.model.Tag.builder().key("team").value("blue").build())))
+                .isInstanceOfSatisfying(Ec2Exception.class,
+                        e -> assertThat(e.awsErrorDetails().errorCode()).isEqualTo("InvalidKeyPair.NotFound"));
+    }
+
+    @Test
+    public void tags_AreCreatedAndDeleted() {
+        final String keyPairId = stub.seed("foo", Collections.singletonMap("team", "blue"));
+
+        ec2Client.createTags(Translator.translateToAddTagsRequest(keyPairId,
+                Collections.singletonMap("stage", "prod")));
+        ec2Client.deleteTags(request -> request
+                .resources(keyPairId)
+                .tags(software.amazon.awssdk.services.ec2.model.Tag.builder().key("stage").value("beta").build()));
+        assertThat(tagKeys(keyPairId)).containsExactly("team", "stage");
+
+        ec2Client.deleteTags(Translator.translateToRemoveTagsRequest(keyPairId, Arrays.asList("team", "stage")));
+        assertThat(tagKeys(keyPairId)).isEmpty();
+    }
+
+    @Test
+    public void deleteKeyPair_SucceedsWhetherOrNotTheKeyExists() {
+        final String keyPairId = stub.seed("foo", Collections.<String, String>emptyMap());
+
+        ec2Client.deleteKeyPair(Translator.translateToDeleteRequest(ResourceModel.builder()
+                .keyPairId(keyPairId)
+                .build()));
+        ec2Client.deleteKeyPair(request -> request.keyPairId(keyPairId));
+
+        assertThat(ec2Client.describeKeyPairs(request -> { }).keyPairs()).isEmpty();
+        assertThat(stub.calls("DeleteKeyPair")).isEqualTo(2);
+        assertThat(stub.calls("DescribeKeyPairs")).isEqualTo(1);
+    }
+
+    @Test
+    public void latency_HoldsBackEveryResponse() {
+        ec2Client.describeKeyPairs(request -> { });
+        stub.latencyMillis(100);
+
+        final long started = System.nanoTime();
+        ec2Client.describeKeyPairs(request -> { });
+
+        assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(100_000_000L);
+    }
+
+    private List<String> tagKeys(final String keyPairId) {
+        return ec2Client.describeKeyPairs(request -> request.keyPairIds(keyPairId)).keyPairs().get(0).tags()
+                .stream()
+                .map(software.amazon.awssdk.services.ec2.model.Tag::key)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> names(final DescribeKeyPairsResponse response) {
+        return response.keyPairs().stream().map(KeyPairInfo::keyName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,96 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmbeddedMetricsTest {
+
+    @AfterEach
+    public void tear_down() {
+        EmbeddedMetrics.logTo(null);
+    }
+
+    @Test
+    public void isEnabled_OnlyWhenTrue() {
+        assertThat(EmbeddedMetrics.isEnabled(null)).isFalse();
+        assertThat(EmbeddedMetrics.isEnabled("")).isFalse();
+        assertThat(EmbeddedMetrics.isEnabled("yes")).isFalse();
+        assertThat(EmbeddedMetrics.isEnabled(" TRUE ")).isTrue();
+    }
+
+    @Test
+    public void write_GoesToTheLoggerOfTheInvocation() {
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        EmbeddedMetrics.logTo(logged::add);
+
+        EmbeddedMetrics.write("{\"metric\":1}");
+
+        assertThat(logged).containsExactly("{\"metric\":1}");
+    }
+
+    @Test
+    public void write_AfterTheInvocationIsDiscarded() throws Exception {
+        final List<String> logged = new CopyOnWriteArrayList<>();
+
+        EmbeddedMetrics.callWithLogger(logged::add, () -> "done");
+        EmbeddedMetrics.write("{\"metric\":1}");
+
+        assertThat(EmbeddedMetrics.logger()).isNull();
+        assertThat(logged).isEmpty();
+    }
+
+    @Test
+    public void write_ConcurrentInvocationsKeepTheirOwnLines() throws Exception {
+        final List<String> first = new CopyOnWriteArrayList<>();
+        final List<String> second = new CopyOnWriteArrayList<>();
+        final CountDownLatch bothLogging = new CountDownLatch(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> one = executor.submit(() -> EmbeddedMetrics.callWithLogger(first::add, () -> {
+                // both invocations have their logger set before either writes
+                bothLogging.countDown();
+                assertThat(bothLogging.await(10, TimeUnit.SECONDS)).isTrue();
+                EmbeddedMetrics.write("first");
+                return null;
+            }));
+            final Future<?> two = executor.submit(() -> EmbeddedMetrics.callWithLogger(second::add, () -> {
+                bothLogging.countDown();
+                assertThat(bothLogging.await(10, TimeUnit.SECONDS)).isTrue();
+                EmbeddedMetrics.write("second");
+                return null;
+            }));
+            one.get(10, TimeUnit.SECONDS);
+            two.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(first).containsExactly("first");
+        assertThat(second).containsExactly("second");
+    }
+
+    @Test
+    public void regionFanOut_WritesToTheLoggerOfTheInvocation() {
+        final List<String> logged = new CopyOnWriteArrayList<>();
+        EmbeddedMetrics.logTo(logged::add);
+
+        RegionFanOut.invokeAll(Arrays.asList("us-east-2", "eu-west-1"), region -> {
+            EmbeddedMetrics.write(region);
+            return region;
+        }, new HashMap<>());
+
+        assertThat(logged).containsExactlyInAnyOrder("us-east-2", "eu-west-1");
+    }
+}
@@ -0,0 +1,215 @@
+package com.awssamples.ec2.importkeypair;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.OperationStatus;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FlightRecorderEventsTest extends AbstractTestBase {
+
+    @TempDir
+    Path directory;
+
+    private Recording recording;
+    private AmazonWebServicesClientProxy proxy;
+    private Ec2Client ec2Client;
+
+    @BeforeEach
+    public void setup() {
+        proxy = new AmazonWebServicesClientProxy(logger, MOCK_CREDENTIALS, () -> Duration.ofSeconds(600).toMillis());
+        ec2Client = mock(Ec2Client.class);
+        recording = new Recording();
+        recording.enable(JfrEvents.Invocation.class).withoutThreshold();
+        recording.enable(JfrEvents.Ec2Call.class).withoutThreshold();
+        recording.enable(JfrEvents.Translation.class).withoutThreshold();
+        recording.enable(JfrEvents.Stabilization.class).withoutThreshold();
+    }
+
+    @AfterEach
+    public void tear_down() {
+        recording.close();
+    }
+
+    @Test
+    public void noRecording_NoEventIsCreated() {
+        assertThat(FlightRecorderEvents.AVAILABLE).isTrue();
+        // the first call of the container is always timed
+        ConnectionPrewarm.recordFirstCall("DescribeKeyPairs", 0);
+        assertThat(FlightRecorderEvents.beginInvocation()).isNull();
+        assertThat(FlightRecorderEvents.isEc2CallEnabled()).isFalse();
+        assertThat(TracedProxyClient.wrap(MOCK_PROXY(proxy, ec2Client), null)).isNotInstanceOf(TracedProxyClient.class);
+    }
+
+    @Test
+    public void create_RecordsInvocationCallAndTranslation() throws Exception {
+        when(ec2Client.importKeyPair(any(ImportKeyPairRequest.class))).thenReturn(ImportKeyPairResponse.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .keyPairId(this.keyPairId)
+                .build());
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .tags(this.tags)
+                        .build())
+                .build();
+
+        recording.start();
+        final ProgressEvent<ResourceModel, CallbackContext> response = new CreateHandler().invoke(proxy, request,
+                new CallbackContext(), TracedProxyClient.wrap(MOCK_PROXY(proxy, ec2Client), null), logger);
+        final List<RecordedEvent> events = stopAndRead();
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        final RecordedEvent invocation = only(events, JfrEvents.Invocation.NAME);
+        assertThat(invocation.getString("handler")).isEqualTo("CreateHandler");
+        assertThat(invocation.getString("status")).isEqualTo("SUCCESS");
+        assertThat(invocation.getString("errorCode")).isNull();
+
+        final RecordedEvent call = only(events, JfrEvents.Ec2Call.NAME);
+        assertThat(call.getString("operation")).isEqualTo("ImportKeyPair");
+        assertThat(call.getInt("attempt")).isEqualTo(1);
+        assertThat(call.getString("errorCode")).isNull();
+        assertThat(call.getDuration()).isLessThanOrEqualTo(invocation.getDuration());
+
+        assertThat(named(events, JfrEvents.Translation.NAME))
+                .extracting(event -> event.getString("method"))
+                .contains("translateToCreateRequest");
+        // a single-region key pair is usable once imported, there is nothing to stabilize
+        assertThat(named(events, JfrEvents.Stabilization.NAME)).isEmpty();
+    }
+
+    @Test
+    public void multiRegionCreate_RecordsEachRegionalAttempt() throws Exception {
+        when(ec2Client.importKeyPair(any(ImportKeyPairRequest.class))).thenReturn(ImportKeyPairResponse.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .keyPairId(this.keyPairId)
+                .build());
+        // the retry finds the home key pair imported by the first invocation
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(DescribeKeyPairsResponse.builder()
+                .keyPairs(getKeyPairInfo(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .keyFingerprint(this.keyFingerprint)
+                        .build()))
+                .build());
+        final Ec2Client regionalClient = mock(Ec2Client.class);
+        when(regionalClient.importKeyPair(any(ImportKeyPairRequest.class)))
+                .thenThrow(Ec2Exception.builder().statusCode(503).message("Service Unavailable").build())
+                .thenReturn(ImportKeyPairResponse.builder().keyPairId("key-eu-west-1").build());
+        final CreateHandler handler = new CreateHandler() {
+            @Override
+            protected ProxyClient<Ec2Client> proxyClientFor(final AmazonWebServicesClientProxy proxy, final String region) {
+                return MOCK_PROXY(proxy, regionalClient);
+            }
+        };
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .region("us-west-2")
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .regions(Arrays.asList("us-west-2", "eu-west-1"))
+                        .build())
+                .build();
+
+        recording.start();
+        final ProgressEvent<ResourceModel, CallbackContext> retry = handler.invoke(proxy, request,
+                new CallbackContext(), MOCK_PROXY(proxy, ec2Client), logger);
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler.invoke(proxy, request,
+                roundTrip(retry.getCallbackContext()), MOCK_PROXY(proxy, ec2Client), logger);
+        final List<RecordedEvent> attempts = named(stopAndRead(), JfrEvents.Stabilization.NAME);
+
+        assertThat(retry.getStatus()).isEqualTo(OperationStatus.IN_PROGRESS);
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(attempts).hasSize(2);
+        attempts.sort(Comparator.comparingInt(event -> event.getInt("attempt")));
+        assertThat(attempts).allSatisfy(event -> {
+            assertThat(event.getString("action")).isEqualTo("AWSSamples-EC2-ImportKeyPair::Create::Regions");
+            assertThat(event.getInt("regions")).isEqualTo(1);
+        });
+        assertThat(attempts.get(0).getInt("attempt")).isEqualTo(1);
+        assertThat(attempts.get(0).getInt("failedRegions")).isEqualTo(1);
+        assertThat(attempts.get(0).getBoolean("stabilized")).isFalse();
+        assertThat(attempts.get(1).getInt("attempt")).isEqualTo(2);
+        assertThat(attempts.get(1).getInt("failedRegions")).isZero();
+        assertThat(attempts.get(1).getBoolean("stabilized")).isTrue();
+    }
+
+    @Test
+    public void failedCall_RecordsErrorCodeAndAttempt() throws Exception {
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenThrow(Ec2Exception.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("RequestLimitExceeded").build())
+                .statusCode(503)
+                .build());
+
+        recording.start();
+        final ProxyClient<Ec2Client> proxyClient = TracedProxyClient.wrap(MOCK_PROXY(proxy, ec2Client), "eu-west-1");
+        for (int i = 0; i < 2; i++) {
+            try {
+                proxyClient.injectCredentialsAndInvokeV2(DescribeKeyPairsRequest.builder().build(),
+                        proxyClient.client()::describeKeyPairs);
+            } catch (final Ec2Exception expected) {
+                // recorded as the call's error code
+            }
+        }
+        final List<RecordedEvent> calls = named(stopAndRead(), JfrEvents.Ec2Call.NAME);
+
+        assertThat(calls).extracting(event -> event.getInt("attempt")).containsExactlyInAnyOrder(1, 2);
+        assertThat(calls).allSatisfy(event -> {
+            assertThat(event.getString("operation")).isEqualTo("DescribeKeyPairs");
+            assertThat(event.getString("region")).isEqualTo("eu-west-1");
+            assertThat(event.getString("errorCode")).isEqualTo("RequestLimitExceeded");
+        });
+    }
+
+    private List<RecordedEvent> stopAndRead() throws Exception {
+        recording.stop();
+        final Path file = directory.resolve("handler.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> named(final List<RecordedEvent> events, final String name) {
+        final List<RecordedEvent> named = new ArrayList<>();
+        for (final RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        return named;
+    }
+
+    private static RecordedEvent only(final List<RecordedEvent> events, final String name) {
+        final List<RecordedEvent> named = named(events, name);
+        assertThat(named).hasSize(1);
+        return named.get(0);
+    }
+}
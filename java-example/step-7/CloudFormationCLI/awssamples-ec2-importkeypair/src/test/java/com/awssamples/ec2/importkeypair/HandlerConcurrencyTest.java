@@ -0,0 +1,252 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.Credentials;
+import software.amazon.cloudformation.proxy.OperationStatus;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs many interleaved invocations against a single handler instance, the way a
+ * long-running server would, and checks that no invocation sees another one's state.
+ */
+public class HandlerConcurrencyTest extends AbstractTestBase {
+    private static final int THREADS = 16;
+    private static final int INVOCATIONS = 400;
+
+    private Ec2Client ec2Client;
+
+    @BeforeEach
+    public void setup() {
+        ec2Client = mock(Ec2Client.class);
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenAnswer(invocation -> {
+            final DescribeKeyPairsRequest request = invocation.getArgument(0);
+            final String id = request.filters().get(0).values().get(0);
+            return DescribeKeyPairsResponse.builder()
+                    .keyPairs(KeyPairInfo.builder().keyPairId(id).keyFingerprint(fingerprintOf(id)).build())
+                    .build();
+        });
+        when(ec2Client.importKeyPair(any(ImportKeyPairRequest.class))).thenAnswer(invocation -> {
+            final ImportKeyPairRequest request = invocation.getArgument(0);
+            return ImportKeyPairResponse.builder()
+                    .keyName(request.keyName())
+                    .keyPairId(idOf(request.keyName()))
+                    .keyFingerprint(fingerprintOf(idOf(request.keyName())))
+                    .build();
+        });
+    }
+
+    @Test
+    public void createHandler_ConcurrentInvocations() throws Exception {
+        final CreateHandler handler = new CreateHandler();
+
+        runConcurrently(i -> () -> {
+            final ResourceModel model = ResourceModel.builder()
+                    .keyName("name-" + i)
+                    .publicKeyMaterial(this.publicKeyMaterial)
+                    .tags(this.tags)
+                    .build();
+
+            final ProgressEvent<ResourceModel, CallbackContext> response = invoke(handler, model);
+
+            assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+            assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(idOf("name-" + i));
+            assertThat(response.getResourceModel().getKeyFingerprint()).isEqualTo(fingerprintOf(idOf("name-" + i)));
+        });
+
+        verify(ec2Client, times(INVOCATIONS)).importKeyPair(any(ImportKeyPairRequest.class));
+    }
+
+    @Test
+    public void updateHandler_ConcurrentInvocations() throws Exception {
+        final UpdateHandler handler = new UpdateHandler();
+
+        runConcurrently(i -> () -> {
+            final ResourceModel model = ResourceModel.builder()
+                    .keyName("name-" + i)
+                    .keyPairId(idOf("name-" + i))
+                    .tags(this.tags)
+                    .build();
+
+            final ProgressEvent<ResourceModel, CallbackContext> response = invoke(handler, model);
+
+            assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+            assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(idOf("name-" + i));
+            assertThat(response.getResourceModel().getKeyFingerprint()).isEqualTo(fingerprintOf(idOf("name-" + i)));
+        });
+
+        verify(ec2Client, times(INVOCATIONS)).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+    }
+
+    @Test
+    public void readHandler_ConcurrentIdenticalReadsShareOneCall() throws Exception {
+        final ReadHandler handler = new ReadHandler();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger describeCalls = new AtomicInteger();
+        final Ec2Client slowClient = heldClient(release, describeCalls);
+        final long sharedBefore = ReadHandler.DESCRIBE_CALLS.sharedCalls();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<ProgressEvent<ResourceModel, CallbackContext>>> futures = new ArrayList<>(THREADS);
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> invoke(handler,
+                        ResourceModel.builder().keyPairId(keyPairId).build(), slowClient)));
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (ReadHandler.DESCRIBE_CALLS.sharedCalls() - sharedBefore < THREADS - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (final Future<ProgressEvent<ResourceModel, CallbackContext>> future : futures) {
+                final ProgressEvent<ResourceModel, CallbackContext> response = future.get(30, TimeUnit.SECONDS);
+                assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+                assertThat(response.getResourceModel().getKeyFingerprint()).isEqualTo(keyFingerprint);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(describeCalls.get()).isEqualTo(1);
+        assertThat(ReadHandler.DESCRIBE_CALLS.sharedCalls() - sharedBefore).isEqualTo(THREADS - 1);
+    }
+
+    @Test
+    public void readHandler_IdenticalReadsWithOtherCredentialsDoNotShareACall() throws Exception {
+        final ReadHandler handler = new ReadHandler();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger describeCalls = new AtomicInteger();
+        final Ec2Client slowClient = heldClient(release, describeCalls);
+        final Credentials otherCredentials = new Credentials("otherAccessKey", "otherSecretKey", "otherToken");
+        final long sharedBefore = ReadHandler.DESCRIBE_CALLS.sharedCalls();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ProgressEvent<ResourceModel, CallbackContext>> first = executor.submit(() ->
+                    invoke(handler, ResourceModel.builder().keyPairId(keyPairId).build(), slowClient, MOCK_CREDENTIALS));
+            final Future<ProgressEvent<ResourceModel, CallbackContext>> second = executor.submit(() ->
+                    invoke(handler, ResourceModel.builder().keyPairId(keyPairId).build(), slowClient, otherCredentials));
+            // both reads reach EC2 while neither has returned; sharing would hold the second one here
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (describeCalls.get() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertThat(first.get(30, TimeUnit.SECONDS).getStatus()).isEqualTo(OperationStatus.SUCCESS);
+            assertThat(second.get(30, TimeUnit.SECONDS).getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(describeCalls.get()).isEqualTo(2);
+        assertThat(ReadHandler.DESCRIBE_CALLS.sharedCalls() - sharedBefore).isZero();
+    }
+
+    /**
+     * @return a stand-in client that holds every describe until the test releases it, so readers pile up on it
+     */
+    private Ec2Client heldClient(final CountDownLatch release, final AtomicInteger describeCalls) {
+        return new Ec2Client() {
+            @Override
+            public DescribeKeyPairsResponse describeKeyPairs(final DescribeKeyPairsRequest request) {
+                describeCalls.incrementAndGet();
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return DescribeKeyPairsResponse.builder()
+                        .keyPairs(KeyPairInfo.builder().keyPairId(keyPairId).keyFingerprint(keyFingerprint).build())
+                        .build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> invoke(final BaseHandlerStd handler, final ResourceModel model) {
+        return invoke(handler, model, ec2Client);
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> invoke(final BaseHandlerStd handler, final ResourceModel model,
+            final Ec2Client client) {
+        return invoke(handler, model, client, MOCK_CREDENTIALS);
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> invoke(final BaseHandlerStd handler, final ResourceModel model,
+            final Ec2Client client, final Credentials credentials) {
+        final AmazonWebServicesClientProxy proxy = new AmazonWebServicesClientProxy(logger, credentials,
+                () -> Duration.ofSeconds(600).toMillis());
+        final ProxyClient<Ec2Client> proxyClient = MOCK_PROXY(proxy, client);
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+        return handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+    }
+
+    private static void runConcurrently(final IntFunction<Runnable> invocations) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(INVOCATIONS);
+            for (int i = 0; i < INVOCATIONS; i++) {
+                final Runnable invocation = invocations.apply(i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    invocation.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String idOf(final String keyName) {
+        return "key-" + keyName;
+    }
+
+    private static String fingerprintOf(final String keyPairId) {
+        return "fingerprint-" + keyPairId;
+    }
+}
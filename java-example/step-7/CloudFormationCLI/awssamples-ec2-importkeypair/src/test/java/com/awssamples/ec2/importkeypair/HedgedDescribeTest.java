@@ -0,0 +1,200 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HedgedDescribeTest {
+    private static final long THRESHOLD_MILLIS = 50;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> metricLines = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void tear_down() {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void disabled_CallsOnTheCallersThread() {
+        final HedgedDescribe hedgedDescribe = new HedgedDescribe(false, 95, 5, executor, scheduler, metricLines::add);
+        final Thread caller = Thread.currentThread();
+
+        assertThat(hedgedDescribe.call(() -> Thread.currentThread() == caller)).isTrue();
+        assertThat(hedgedDescribe.calls()).isZero();
+    }
+
+    @Test
+    public void tooFewLatencies_NothingIsHedged() {
+        final HedgedDescribe hedgedDescribe = new HedgedDescribe(true, 95, 50, executor, scheduler, metricLines::add);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < HedgedDescribe.MIN_SAMPLES - 1; i++) {
+            hedgedDescribe.call(attempts::incrementAndGet);
+        }
+
+        assertThat(attempts.get()).isEqualTo(HedgedDescribe.MIN_SAMPLES - 1);
+        assertThat(hedgedDescribe.thresholdNanos()).isZero();
+        assertThat(hedgedDescribe.hedges()).isZero();
+    }
+
+    @Test
+    public void threshold_IsThePercentileOfRecentLatencies() {
+        final HedgedDescribe hedgedDescribe = new HedgedDescribe(true, 95, 5, executor, scheduler, metricLines::add);
+
+        for (int i = 1; i <= 128; i++) {
+            hedgedDescribe.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(hedgedDescribe.thresholdNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(122));
+    }
+
+    @Test
+    public void noBudget_CallsOnTheCallersThread() {
+        final HedgedDescribe hedgedDescribe = new HedgedDescribe(true, 95, 0, executor, scheduler, metricLines::add);
+        seed(hedgedDescribe);
+        final Thread caller = Thread.currentThread();
+
+        assertThat(hedgedDescribe.call(() -> Thread.currentThread() == caller)).isTrue();
+        assertThat(hedgedDescribe.hedges()).isZero();
+        assertThat(metricLines).isEmpty();
+    }
+
+    @Test
+    public void slowDescribe_IsAnsweredByTheHedgeBeforeItReturns() {
+        final HedgedDescribe hedgedDescribe = warmedUp();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch primaryReturned = new CountDownLatch(1);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            final String result = hedgedDescribe.call(() -> {
+                if (attempts.incrementAndGet() == 1) {
+                    await(release);
+                    primaryReturned.countDown();
+                    return "primary";
+                }
+                return "hedge";
+            });
+
+            assertThat(result).isEqualTo("hedge");
+            assertThat(primaryReturned.getCount()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+        assertThat(hedgedDescribe.hedges()).isEqualTo(1);
+        assertThat(hedgedDescribe.hedgesWon()).isEqualTo(1);
+        assertThat(metricLines).hasSize(1);
+        assertThat(metricLines.get(0)).contains("\"HedgesIssued\":1", "\"HedgesWon\":1");
+    }
+
+    @Test
+    public void failingPrimary_IsAnsweredByTheHedge() {
+        final HedgedDescribe hedgedDescribe = warmedUp();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = hedgedDescribe.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(2 * THRESHOLD_MILLIS);
+                throw new IllegalStateException("throttled");
+            }
+            return "hedge";
+        });
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(hedgedDescribe.hedgesWon()).isEqualTo(1);
+    }
+
+    @Test
+    public void failure_IsRethrownUnwrapped() {
+        final HedgedDescribe hedgedDescribe = warmedUp();
+
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> hedgedDescribe.call(() -> {
+                    throw new IllegalArgumentException("invalid filter");
+                }));
+
+        assertThat(e.getMessage()).isEqualTo("invalid filter");
+        assertThat(hedgedDescribe.hedges()).isZero();
+    }
+
+    @Test
+    public void budget_CapsHedgesAtAFractionOfDescribes() {
+        // 5% of 20 describes pays for exactly one hedge
+        final HedgedDescribe hedgedDescribe = new HedgedDescribe(true, 95, 5, executor, scheduler, metricLines::add);
+        seed(hedgedDescribe);
+        for (int i = 0; i < 19; i++) {
+            hedgedDescribe.call(() -> "fast");
+        }
+
+        hedgedDescribe.call(HedgedDescribeTest::slow);
+        hedgedDescribe.call(HedgedDescribeTest::slow);
+
+        assertThat(hedgedDescribe.calls()).isEqualTo(21);
+        assertThat(hedgedDescribe.hedges()).isEqualTo(1);
+        assertThat(hedgedDescribe.hedgesDenied()).isEqualTo(1);
+        assertThat(hedgedDescribe.hedgesWon()).isZero();
+        assertThat(metricLines).hasSize(1);
+        assertThat(metricLines.get(0)).contains("\"HedgesIssued\":1", "\"HedgesWon\":0");
+    }
+
+    @Test
+    public void parsePercent_KeepsTheDefaultOutOfRange() {
+        assertThat(HedgedDescribe.parsePercent(null, 95, 50, 99.9)).isEqualTo(95);
+        assertThat(HedgedDescribe.parsePercent(" 99 ", 95, 50, 99.9)).isEqualTo(99);
+        assertThat(HedgedDescribe.parsePercent("100", 95, 50, 99.9)).isEqualTo(95);
+        assertThat(HedgedDescribe.parsePercent("p99", 95, 50, 99.9)).isEqualTo(95);
+    }
+
+    /**
+     * @return hedging with a threshold of {@link #THRESHOLD_MILLIS} and budget for at least one hedge
+     */
+    private HedgedDescribe warmedUp() {
+        final HedgedDescribe hedgedDescribe = new HedgedDescribe(true, 95, 50, executor, scheduler, metricLines::add);
+        seed(hedgedDescribe);
+        hedgedDescribe.call(() -> "fast");
+        hedgedDescribe.call(() -> "fast");
+        return hedgedDescribe;
+    }
+
+    private static void seed(final HedgedDescribe hedgedDescribe) {
+        for (int i = 0; i < HedgedDescribe.MIN_SAMPLES; i++) {
+            hedgedDescribe.record(TimeUnit.MILLISECONDS.toNanos(THRESHOLD_MILLIS));
+        }
+        assertThat(hedgedDescribe.thresholdNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(THRESHOLD_MILLIS));
+    }
+
+    private static String slow() {
+        sleep(2 * THRESHOLD_MILLIS);
+        return "slow";
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.cloudformation.LambdaWrapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HttpTransportTest {
+
+    @Test
+    public void parse_NamesInAnyCase() {
+        assertThat(HttpTransport.parse(null)).isEqualTo(HttpTransport.WRAPPER);
+        assertThat(HttpTransport.parse(" ")).isEqualTo(HttpTransport.WRAPPER);
+        assertThat(HttpTransport.parse("apache")).isEqualTo(HttpTransport.APACHE);
+        assertThat(HttpTransport.parse(" url-connection ")).isEqualTo(HttpTransport.URL_CONNECTION);
+        assertThat(HttpTransport.parse("URL_CONNECTION")).isEqualTo(HttpTransport.URL_CONNECTION);
+        assertThat(HttpTransport.parse("netty")).isEqualTo(HttpTransport.WRAPPER);
+    }
+
+    @Test
+    public void wrapper_IsTheSharedClient() {
+        assertThat(HttpTransport.WRAPPER.create(allSettings()::get)).isSameAs(LambdaWrapper.HTTP_CLIENT);
+    }
+
+    @Test
+    public void apache_TakesEverySetting() {
+        try (SdkHttpClient client = HttpTransport.APACHE.create(allSettings()::get)) {
+            assertThat(client).isInstanceOf(ApacheHttpClient.class);
+        }
+    }
+
+    @Test
+    public void urlConnection_TakesTheTimeouts() {
+        try (SdkHttpClient client = HttpTransport.URL_CONNECTION.create(allSettings()::get)) {
+            assertThat(client).isInstanceOf(UrlConnectionHttpClient.class);
+        }
+    }
+
+    @Test
+    public void unparseableSettings_KeepTheDefaults() {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put(HttpTransport.MAX_CONNECTIONS_ENVIRONMENT_VARIABLE, "many");
+        settings.put(HttpTransport.CONNECTION_TIMEOUT_ENVIRONMENT_VARIABLE, "-1");
+        settings.put(HttpTransport.SOCKET_TIMEOUT_ENVIRONMENT_VARIABLE, "");
+
+        try (SdkHttpClient client = HttpTransport.APACHE.create(settings::get)) {
+            assertThat(client).isInstanceOf(ApacheHttpClient.class);
+        }
+    }
+
+    private static Map<String, String> allSettings() {
+        final Map<String, String> settings = new HashMap<>();
+        settings.put(HttpTransport.MAX_CONNECTIONS_ENVIRONMENT_VARIABLE, "8");
+        settings.put(HttpTransport.CONNECTION_TIMEOUT_ENVIRONMENT_VARIABLE, "1000");
+        settings.put(HttpTransport.SOCKET_TIMEOUT_ENVIRONMENT_VARIABLE, "5000");
+        settings.put(HttpTransport.MAX_IDLE_ENVIRONMENT_VARIABLE, "30000");
+        settings.put(HttpTransport.TCP_KEEP_ALIVE_ENVIRONMENT_VARIABLE, "true");
+        return settings;
+    }
+}
@@ -0,0 +1,227 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.CreateTagsRequest;
+import software.amazon.awssdk.services.ec2.model.CreateTagsResponse;
+import software.amazon.awssdk.services.ec2.model.DeleteKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.DeleteTagsRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteTagsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.OperationStatus;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Declares, per handler and scenario, how many EC2 calls one invocation may make and how many
+ * bytes it may allocate on the invoking thread. A change that adds a call or multiplies allocation
+ * fails here rather than in a bill or a latency graph. Call budgets are exact; allocation budgets
+ * leave room for JIT and JDK differences and are meant to catch regressions of 2x and more, so
+ * lower them when a handler gets cheaper. The stub records no invocations, so what is measured is
+ * the handler, the translator and the CloudFormation proxy.
+ */
+public class InvocationBudgetTest extends AbstractTestBase {
+    private static final int WARMUP_INVOCATIONS = 200;
+    private static final int MEASURED_INVOCATIONS = 20;
+    private static final long KIB = 1024;
+
+    private AmazonWebServicesClientProxy proxy;
+    private Ec2Client stub;
+    private CountingEc2Client ec2Client;
+
+    @BeforeEach
+    public void setup() {
+        proxy = new AmazonWebServicesClientProxy(logger, MOCK_CREDENTIALS, () -> Duration.ofSeconds(600).toMillis());
+        stub = mock(Ec2Client.class, withSettings().stubOnly());
+        ec2Client = new CountingEc2Client(stub);
+    }
+
+    @Test
+    public void read_ExistingKey() {
+        describeReturns(existingKeyPair(this.tags));
+
+        assertWithinBudget(new ReadHandler(), () -> request(desiredModel(this.tags)),
+                calls("DescribeKeyPairs", 1), 96 * KIB);
+    }
+
+    @Test
+    public void create_WithTags() {
+        when(stub.importKeyPair(any(ImportKeyPairRequest.class))).thenReturn(ImportKeyPairResponse.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .keyPairId(this.keyPairId)
+                .build());
+
+        final Supplier<ResourceHandlerRequest<ResourceModel>> requests = () -> request(ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .tags(this.tags)
+                .build());
+
+        // one invocation is the whole create, and the tags go with the import, so there is no separate CreateTags
+        assertThat(invoke(new CreateHandler(), requests.get()).getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertWithinBudget(new CreateHandler(), requests, calls("ImportKeyPair", 1), 160 * KIB);
+    }
+
+    @Test
+    public void update_NoChanges() {
+        describeReturns(existingKeyPair(this.tags));
+
+        assertWithinBudget(new UpdateHandler(), () -> request(desiredModel(this.tags)),
+                calls("DescribeKeyPairs", 1), 96 * KIB);
+    }
+
+    @Test
+    public void update_ChangedTags() {
+        describeReturns(existingKeyPair(Arrays.asList(new Tag("key1", "old"), new Tag("key3", "value3"))));
+        when(stub.deleteTags(any(DeleteTagsRequest.class))).thenReturn(DeleteTagsResponse.builder().build());
+        when(stub.createTags(any(CreateTagsRequest.class))).thenReturn(CreateTagsResponse.builder().build());
+
+        assertWithinBudget(new UpdateHandler(), () -> request(desiredModel(this.tags)),
+                calls("DescribeKeyPairs", 1, "DeleteTags", 1, "CreateTags", 1), 192 * KIB);
+    }
+
+    @Test
+    public void delete_ExistingKey() {
+        describeReturns(existingKeyPair(this.tags));
+        when(stub.deleteKeyPair(any(DeleteKeyPairRequest.class))).thenReturn(DeleteKeyPairResponse.builder().build());
+
+        assertWithinBudget(new DeleteHandler(), () -> request(desiredModel(this.tags)),
+                calls("DescribeKeyPairs", 1, "DeleteKeyPair", 1), 128 * KIB);
+    }
+
+    @Test
+    public void delete_MissingKey() {
+        when(stub.describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+
+        assertWithinBudget(new DeleteHandler(), () -> request(desiredModel(this.tags)),
+                calls("DescribeKeyPairs", 1), 96 * KIB);
+    }
+
+    @Test
+    public void list_HundredKeys() {
+        final KeyPairInfo[] keyPairs = new KeyPairInfo[100];
+        for (int i = 0; i < keyPairs.length; i++) {
+            keyPairs[i] = KeyPairInfo.builder()
+                    .keyName(this.keyName + i)
+                    .keyPairId(String.format("key-%017d", i))
+                    .keyFingerprint(this.keyFingerprint)
+                    .tags(TagHelper.translateTagsFromSdk(this.tags))
+                    .build();
+        }
+        when(stub.describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().keyPairs(keyPairs).build());
+
+        assertWithinBudget(new ListHandler(), () -> request(new ResourceModel()),
+                calls("DescribeKeyPairs", 1), 256 * KIB);
+    }
+
+    /**
+     * Runs the invocation until it is compiled, checks the calls of one more invocation against the
+     * budget exactly, then checks the least any of several invocations allocated. Handlers update
+     * the model they are given, so each invocation gets a request of its own, built before measuring.
+     */
+    private void assertWithinBudget(final BaseHandlerStd handler,
+            final Supplier<ResourceHandlerRequest<ResourceModel>> requests, final Map<String, Integer> callBudget,
+            final long allocationBudget) {
+        for (int i = 0; i < WARMUP_INVOCATIONS; i++) {
+            invoke(handler, requests.get());
+        }
+        ec2Client.reset();
+        invoke(handler, requests.get());
+        assertThat(ec2Client.counts()).as("EC2 calls of one %s invocation", handler.getClass().getSimpleName())
+                .isEqualTo(callBudget);
+
+        final com.sun.management.ThreadMXBean threads = threadMXBean();
+        final long thread = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_INVOCATIONS; i++) {
+            final ResourceHandlerRequest<ResourceModel> request = requests.get();
+            final long before = threads.getThreadAllocatedBytes(thread);
+            invoke(handler, request);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+        }
+        assertThat(allocated).as("bytes allocated by one %s invocation", handler.getClass().getSimpleName())
+                .isLessThanOrEqualTo(allocationBudget);
+    }
+
+    private ProgressEvent<ResourceModel, CallbackContext> invoke(final BaseHandlerStd handler,
+            final ResourceHandlerRequest<ResourceModel> request) {
+        // every invocation starts cold, as a fresh request would
+        clearSharedState();
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler.handleRequest(proxy, request,
+                new CallbackContext(), MOCK_PROXY(proxy, ec2Client.client()), logger);
+        assertThat(response.getStatus()).isNotNull();
+        return response;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "per-thread allocation is not measurable on this JVM");
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "per-thread allocation is not measurable on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static Map<String, Integer> calls(final Object... operationsAndCounts) {
+        final Map<String, Integer> calls = new LinkedHashMap<>();
+        for (int i = 0; i < operationsAndCounts.length; i += 2) {
+            calls.put((String) operationsAndCounts[i], (Integer) operationsAndCounts[i + 1]);
+        }
+        return Collections.unmodifiableMap(calls);
+    }
+
+    private void describeReturns(final KeyPairInfo keyPairInfo) {
+        when(stub.describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().keyPairs(keyPairInfo).build());
+    }
+
+    private KeyPairInfo existingKeyPair(final List<Tag> tags) {
+        return getKeyPairInfo(ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyPairId(this.keyPairId)
+                .keyFingerprint(this.keyFingerprint)
+                .tags(tags)
+                .build());
+    }
+
+    private ResourceModel desiredModel(final List<Tag> tags) {
+        return ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyPairId(this.keyPairId)
+                .tags(tags)
+                .build();
+    }
+
+    private static ResourceHandlerRequest<ResourceModel> request(final ResourceModel model) {
+        return ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyMaterialHelperTest extends AbstractTestBase {
+    private static final String ED25519_KEY =
+            "ssh-ed25519 AAAAC3NzaC1lZDI1NTE5AAAAIC2yHRZ7e0TYwRkLTTpgp2arC7H5pZCLhlf7r+x9HHse test";
+
+    @Test
+    public void parse_OpenSsh() {
+        final KeyMaterialHelper.PublicKeyBlob key = KeyMaterialHelper.parse(this.publicKeyMaterial);
+
+        assertThat(key).isNotNull();
+        assertThat(key.getType()).isEqualTo(KeyMaterialHelper.RSA);
+        assertThat(key.getBlob()).isEqualTo(Base64.getDecoder().decode(this.publicKeyMaterial.split(" ")[1]));
+    }
+
+    @Test
+    public void parse_OpenSshWithoutComment() {
+        final String material = this.publicKeyMaterial.substring(0, this.publicKeyMaterial.lastIndexOf(' '));
+        assertThat(KeyMaterialHelper.parse(material)).isNotNull();
+    }
+
+    @Test
+    public void parse_Ed25519() {
+        final String material = KeyMaterialHelper.ED25519 + " " + encode(ed25519Blob(32)) + " user@host";
+
+        final KeyMaterialHelper.PublicKeyBlob key = KeyMaterialHelper.parse(material);
+
+        assertThat(key).isNotNull();
+        assertThat(key.getType()).isEqualTo(KeyMaterialHelper.ED25519);
+        assertThat(KeyMaterialHelper.parse(KeyMaterialHelper.ED25519 + " " + encode(ed25519Blob(31)))).isNull();
+    }
+
+    @Test
+    public void parse_Rfc4716() {
+        final String body = this.publicKeyMaterial.split(" ")[1];
+        final String material = "---- BEGIN SSH2 PUBLIC KEY ----\n"
+                + "Comment: \"a comment that continues \\\n"
+                + "onto a second line\"\n"
+                + body.substring(0, 70) + "\n"
+                + body.substring(70) + "\n"
+                + "---- END SSH2 PUBLIC KEY ----\n";
+
+        final KeyMaterialHelper.PublicKeyBlob key = KeyMaterialHelper.parse(material);
+
+        assertThat(key).isNotNull();
+        assertThat(key.getBlob()).isEqualTo(KeyMaterialHelper.parse(this.publicKeyMaterial).getBlob());
+        assertThat(KeyMaterialHelper.parse(material.replace("---- END SSH2 PUBLIC KEY ----", ""))).isNull();
+    }
+
+    @Test
+    public void parse_Der() throws NoSuchAlgorithmException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        final String material = encode(generator.generateKeyPair().getPublic().getEncoded());
+
+        final KeyMaterialHelper.PublicKeyBlob key = KeyMaterialHelper.parse(material);
+
+        assertThat(key).isNotNull();
+        assertThat(key.getType()).isEqualTo(KeyMaterialHelper.RSA);
+        // the DER key is re-encoded the same way an OpenSSH key would be
+        assertThat(KeyMaterialHelper.parse(KeyMaterialHelper.RSA + " " + encode(key.getBlob()))).isNotNull();
+    }
+
+    @Test
+    public void parse_Invalid() {
+        assertThat(KeyMaterialHelper.parse(null)).isNull();
+        assertThat(KeyMaterialHelper.parse(" ")).isNull();
+        assertThat(KeyMaterialHelper.parse("invalid")).isNull();
+        assertThat(KeyMaterialHelper.parse("123456")).isNull();
+        assertThat(KeyMaterialHelper.parse(KeyMaterialHelper.RSA)).isNull();
+        assertThat(KeyMaterialHelper.parse("ssh-rsa not-base64!")).isNull();
+        assertThat(KeyMaterialHelper.parse("ssh-dss " + encode(ed25519Blob(32)))).isNull();
+    }
+
+    @Test
+    public void parse_TypeMustMatchBlob() {
+        final String body = this.publicKeyMaterial.split(" ")[1];
+        assertThat(KeyMaterialHelper.parse(KeyMaterialHelper.ED25519 + " " + body)).isNull();
+    }
+
+    @Test
+    public void parse_TruncatedOrTrailingBytes() {
+        final byte[] blob = KeyMaterialHelper.parse(this.publicKeyMaterial).getBlob();
+        final byte[] truncated = new byte[blob.length - 1];
+        System.arraycopy(blob, 0, truncated, 0, truncated.length);
+        final byte[] trailing = new byte[blob.length + 1];
+        System.arraycopy(blob, 0, trailing, 0, blob.length);
+
+        assertThat(KeyMaterialHelper.parse(KeyMaterialHelper.RSA + " " + encode(truncated))).isNull();
+        assertThat(KeyMaterialHelper.parse(KeyMaterialHelper.RSA + " " + encode(trailing))).isNull();
+    }
+
+    private static byte[] ed25519Blob(final int keyLength) {
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        writeString(blob, KeyMaterialHelper.ED25519.getBytes(StandardCharsets.US_ASCII));
+        writeString(blob, new byte[keyLength]);
+        return blob.toByteArray();
+    }
+
+    private static void writeString(final ByteArrayOutputStream out, final byte[] value) {
+        out.write(value.length >>> 24);
+        out.write(value.length >>> 16);
+        out.write(value.length >>> 8);
+        out.write(value.length);
+        out.write(value, 0, value.length);
+    }
+
+    private static String encode(final byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Test
+    public void fingerprint_Rsa() {
+        // what EC2 reports for this key, the MD5 of its DER encoding rather than what ssh-keygen -l -E md5 shows:
+        // ssh-keygen -e -m PKCS8 -f key.pub | openssl pkey -pubin -outform DER | openssl md5 -c
+        assertThat(KeyMaterialHelper.fingerprint(KeyMaterialHelper.parse(this.publicKeyMaterial)))
+                .isEqualTo("12:a9:21:b8:80:6a:f0:a3:4a:4d:08:74:29:7f:c6:5e");
+    }
+
+    @Test
+    public void fingerprint_Ed25519() {
+        // ssh-keygen -l -E sha256
+        assertThat(KeyMaterialHelper.hasFingerprint(ED25519_KEY, "wmrUh+IX8c/lJsDjKaWsCSavTVcvw3eaQyWmspzclkU=")).isTrue();
+        assertThat(KeyMaterialHelper.hasFingerprint(ED25519_KEY, "wmrUh+IX8c/lJsDjKaWsCSavTVcvw3eaQyWmspzclkU")).isTrue();
+        assertThat(KeyMaterialHelper.hasFingerprint(ED25519_KEY, "WMRUH+IX8C/LJSDJKAWSCSAVTVCVW3EAQYWMSPZCLKU")).isFalse();
+    }
+
+    @Test
+    public void hasFingerprint() {
+        assertThat(KeyMaterialHelper.hasFingerprint(this.publicKeyMaterial, "12:a9:21:b8:80:6a:f0:a3:4a:4d:08:74:29:7f:c6:5e")).isTrue();
+        assertThat(KeyMaterialHelper.hasFingerprint(this.publicKeyMaterial, "29:64:25:b6:60:83:f3:d1:ec:ce:5b:8f:e4:e9:bb:74")).isFalse();
+        assertThat(KeyMaterialHelper.hasFingerprint(this.publicKeyMaterial, null)).isFalse();
+        assertThat(KeyMaterialHelper.hasFingerprint("invalid", "12:a9:21:b8:80:6a:f0:a3:4a:4d:08:74:29:7f:c6:5e")).isFalse();
+    }
+}
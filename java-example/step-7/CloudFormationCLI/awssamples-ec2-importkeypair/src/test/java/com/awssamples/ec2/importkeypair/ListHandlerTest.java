@@ -4,11 +4,13 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Filter;
 import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
 import software.amazon.cloudformation.proxy.OperationStatus;
@@ -17,6 +19,8 @@ import software.amazon.cloudformation.proxy.ProxyClient;
 import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.any;
@@ -87,5 +91,120 @@ public class ListHandlerTest extends AbstractTestBase {
 
         verify(proxyClient.client()).describeKeyPairs(any(DescribeKeyPairsRequest.class));
     }
-}
 
+    @Test
+    public void handleRequest_NoFilters() {
+        final DescribeKeyPairsResponse describeKeyPairsResponse = DescribeKeyPairsResponse
+                .builder()
+                .build();
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(describeKeyPairsResponse);
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(ResourceModel.builder().build())
+                .build();
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+
+        final ArgumentCaptor<DescribeKeyPairsRequest> captor = ArgumentCaptor.forClass(DescribeKeyPairsRequest.class);
+        verify(proxyClient.client()).describeKeyPairs(captor.capture());
+        assertThat(captor.getValue().filters()).isEmpty();
+    }
+
+    @Test
+    public void handleRequest_PushesDownFilters() {
+        final ResourceModel model = ResourceModel.builder()
+                .keyName("foo*")
+                .keyPairId(this.keyPairId)
+                .tags(Arrays.asList(
+                        Tag.builder().key("key1").value("value1").build(),
+                        Tag.builder().key("key2").value("").build()))
+                .build();
+
+        final DescribeKeyPairsResponse describeKeyPairsResponse = DescribeKeyPairsResponse
+                .builder()
+                .build();
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(describeKeyPairsResponse);
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModels()).isEmpty();
+
+        final ArgumentCaptor<DescribeKeyPairsRequest> captor = ArgumentCaptor.forClass(DescribeKeyPairsRequest.class);
+        verify(proxyClient.client()).describeKeyPairs(captor.capture());
+        assertThat(captor.getValue().filters()).containsExactly(
+                Filter.builder().name("key-name").values("foo*").build(),
+                Filter.builder().name("key-pair-id").values(this.keyPairId).build(),
+                Filter.builder().name("tag:key1").values("value1").build(),
+                Filter.builder().name("tag-key").values("key2").build());
+    }
+
+    @Test
+    public void handleRequest_FullProjectionIncludesTags() {
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .tags(this.tags)
+                .keyPairId(this.keyPairId)
+                .build();
+
+        final DescribeKeyPairsResponse describeKeyPairsResponse = DescribeKeyPairsResponse
+                .builder()
+                .keyPairs(this.getKeyPairInfo(model))
+                .build();
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(describeKeyPairsResponse);
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder().build();
+        final ProgressEvent<ResourceModel, CallbackContext> response = new ListHandler(ListProjection.FULL)
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModels()).containsExactly(model);
+
+        verify(proxyClient.client()).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+    }
+
+    @Test
+    public void handleRequest_IdentifiersProjection() {
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .tags(this.tags)
+                .keyPairId(this.keyPairId)
+                .build();
+
+        final DescribeKeyPairsResponse describeKeyPairsResponse = DescribeKeyPairsResponse
+                .builder()
+                .keyPairs(this.getKeyPairInfo(model))
+                .build();
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(describeKeyPairsResponse);
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder().build();
+        final ProgressEvent<ResourceModel, CallbackContext> response = new ListHandler(ListProjection.IDENTIFIERS)
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModels())
+                .containsExactly(ResourceModel.builder().keyPairId(this.keyPairId).build());
+
+        verify(proxyClient.client()).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+    }
+
+    @Test
+    public void parseProjection() {
+        assertThat(ListProjection.parse(null)).isEqualTo(ListProjection.SUMMARY);
+        assertThat(ListProjection.parse(" full ")).isEqualTo(ListProjection.FULL);
+        assertThat(ListProjection.parse("identifiers")).isEqualTo(ListProjection.IDENTIFIERS);
+        assertThat(ListProjection.parse("bogus")).isEqualTo(ListProjection.SUMMARY);
+    }
+}
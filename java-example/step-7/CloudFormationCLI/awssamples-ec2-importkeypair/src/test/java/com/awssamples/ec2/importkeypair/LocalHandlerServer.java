@@ -0,0 +1,264 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running local server for contract and load testing. The handlers are loaded once
+ * and every invocation runs in the same warm JVM, instead of SAM starting a fresh
+ * container per call.
+ *
+ * <ul>
+ *   <li>{@code POST /} takes a complete test entrypoint payload (credentials, action, request, callbackContext)
+ *   and passes it through unchanged.</li>
+ *   <li>{@code POST /create|read|update|delete|list} takes a resource model such as
+ *   {@code inputs/inputs_1_create.json} and wraps it into a payload using the credentials
+ *   and region from the environment.</li>
+ * </ul>
+ *
+ * Run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.awssamples.ec2.importkeypair.LocalHandlerServer -Dexec.args="9000"}
+ */
+public class LocalHandlerServer {
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> ACTIONS = new HashSet<>(Arrays.asList("CREATE", "READ", "UPDATE", "DELETE", "LIST"));
+
+    /** Runs one invocation: reads a test entrypoint payload and writes the handler response. */
+    @FunctionalInterface
+    interface Invoker {
+        void invoke(InputStream input, OutputStream output) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Invoker invoker;
+    private final ObjectNode credentials;
+    private final String region;
+
+    LocalHandlerServer(final int port, final int threads, final Invoker invoker,
+            final ObjectNode credentials, final String region) throws IOException {
+        this.invoker = invoker;
+        this.credentials = credentials;
+        this.region = region;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 9000;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        final ObjectNode credentials = MAPPER.createObjectNode();
+        credentials.put("accessKeyId", System.getenv("AWS_ACCESS_KEY_ID"));
+        credentials.put("secretAccessKey", System.getenv("AWS_SECRET_ACCESS_KEY"));
+        credentials.put("sessionToken", System.getenv("AWS_SESSION_TOKEN"));
+        final String region = System.getenv("AWS_REGION") != null ? System.getenv("AWS_REGION") : "us-east-1";
+
+        final LocalHandlerServer server = new LocalHandlerServer(port, threads, handlerWrapperInvoker(), credentials, region);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+        System.out.printf("%s handlers listening on http://localhost:%d with %d threads%n",
+                ResourceModel.TYPE_NAME, server.port(), threads);
+    }
+
+    /**
+     * The wrapper keeps per-invocation state in fields, so each worker thread gets its own
+     * instance; the handlers and the EC2 client behind them stay warm for the life of the JVM.
+     */
+    static Invoker handlerWrapperInvoker() {
+        final ThreadLocal<HandlerWrapper> wrappers = ThreadLocal.withInitial(HandlerWrapper::new);
+        final Context context = new LocalContext();
+        return (input, output) -> wrappers.get().testEntrypoint(input, output, context);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only POST is supported");
+                return;
+            }
+            final String action = exchange.getRequestURI().getPath().replace("/", "").toUpperCase(Locale.ROOT);
+            final byte[] body = readFully(exchange.getRequestBody());
+            final byte[] payload;
+            if (action.isEmpty()) {
+                payload = body;
+            } else if (ACTIONS.contains(action)) {
+                payload = wrap(action, body);
+            } else {
+                respond(exchange, 404, "Unknown action " + action);
+                return;
+            }
+
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            invoker.invoke(new ByteArrayInputStream(payload), output);
+            respond(exchange, 200, output.toByteArray());
+        } catch (final Exception e) {
+            respond(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    byte[] wrap(final String action, final byte[] model) throws IOException {
+        return payload(credentials, region, action, UUID.randomUUID().toString(),
+                model.length > 0 ? MAPPER.readTree(model) : null, null);
+    }
+
+    /**
+     * @param model the desired resource state, or null for none
+     * @param callbackContext the context handed back by the previous invocation of this request, or null
+     * @return a test entrypoint payload
+     */
+    static byte[] payload(final ObjectNode credentials, final String region, final String action,
+            final String clientRequestToken, final JsonNode model, final JsonNode callbackContext) throws IOException {
+        final ObjectNode request = MAPPER.createObjectNode();
+        request.put("clientRequestToken", clientRequestToken);
+        request.put("logicalResourceIdentifier", "LocalResource");
+        if (model != null) {
+            request.set("desiredResourceState", model);
+        }
+
+        final ObjectNode payload = MAPPER.createObjectNode();
+        payload.set("credentials", credentials);
+        payload.put("action", action);
+        payload.put("region", region);
+        payload.set("request", request);
+        if (callbackContext != null) {
+            payload.set("callbackContext", callbackContext);
+        } else {
+            payload.putNull("callbackContext");
+        }
+        return MAPPER.writeValueAsBytes(payload);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String message) throws IOException {
+        respond(exchange, status, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    static byte[] readFully(final InputStream input) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    /** Minimal Lambda context; the wrapper only needs a logger and the remaining time. */
+    static class LocalContext implements Context {
+        private static final LambdaLogger LOGGER = new LambdaLogger() {
+            @Override
+            public void log(final String message) {
+                System.out.println(message);
+            }
+
+            @Override
+            public void log(final byte[] message) {
+                System.out.println(new String(message, StandardCharsets.UTF_8));
+            }
+        };
+
+        @Override
+        public String getAwsRequestId() {
+            return UUID.randomUUID().toString();
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return "local";
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return "local";
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "LocalHandlerServer";
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return "$LATEST";
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return "arn:aws:lambda:local:000000000000:function:LocalHandlerServer";
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return (int) TimeUnit.MINUTES.toMillis(15);
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 1024;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return LOGGER;
+        }
+    }
+}
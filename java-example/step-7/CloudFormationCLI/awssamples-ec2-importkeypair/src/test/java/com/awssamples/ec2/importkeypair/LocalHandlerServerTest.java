@@ -0,0 +1,98 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalHandlerServerTest {
+
+    private final AtomicInteger invocations = new AtomicInteger();
+    private LocalHandlerServer server;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        final ObjectNode credentials = LocalHandlerServer.MAPPER.createObjectNode();
+        credentials.put("accessKeyId", "accessKey");
+        // echoes the payload back so the tests can see what the handlers would have received
+        final LocalHandlerServer.Invoker echo = (input, output) -> {
+            invocations.incrementAndGet();
+            output.write(LocalHandlerServer.readFully(input));
+        };
+        server = new LocalHandlerServer(0, 4, echo, credentials, "us-west-2");
+        server.start();
+    }
+
+    @AfterEach
+    public void tear_down() {
+        server.stop();
+    }
+
+    @Test
+    public void post_ModelIsWrappedIntoPayload() throws IOException {
+        final String model = "{\"KeyName\":\"foo\",\"PublicKeyMaterial\":\"ssh-rsa AAAA\"}";
+
+        final JsonNode payload = LocalHandlerServer.MAPPER.readTree(post("/create", model, 200));
+
+        assertThat(payload.get("action").asText()).isEqualTo("CREATE");
+        assertThat(payload.get("region").asText()).isEqualTo("us-west-2");
+        assertThat(payload.get("credentials").get("accessKeyId").asText()).isEqualTo("accessKey");
+        assertThat(payload.get("request").get("clientRequestToken").asText()).isNotEmpty();
+        assertThat(payload.get("request").get("desiredResourceState").get("KeyName").asText()).isEqualTo("foo");
+        assertThat(payload.get("callbackContext").isNull()).isTrue();
+    }
+
+    @Test
+    public void post_ListWithoutModel() throws IOException {
+        final JsonNode payload = LocalHandlerServer.MAPPER.readTree(post("/list", "", 200));
+
+        assertThat(payload.get("action").asText()).isEqualTo("LIST");
+        assertThat(payload.get("request").has("desiredResourceState")).isFalse();
+    }
+
+    @Test
+    public void post_FullPayloadPassesThrough() throws IOException {
+        final String payload = "{\"action\":\"READ\",\"request\":{}}";
+
+        assertThat(post("/", payload, 200)).isEqualTo(payload);
+    }
+
+    @Test
+    public void post_ReusesServerAcrossInvocations() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            post("/read", "{\"KeyPairId\":\"key-" + i + "\"}", 200);
+        }
+        assertThat(invocations.get()).isEqualTo(20);
+    }
+
+    @Test
+    public void post_UnknownAction() throws IOException {
+        post("/explode", "{}", 404);
+        assertThat(invocations.get()).isZero();
+    }
+
+    private String post(final String path, final String body, final int expectedStatus) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) URI.create("http://127.0.0.1:" + server.port() + path).toURL()
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(connection.getResponseCode()).isEqualTo(expectedStatus);
+        try (InputStream input = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return new String(LocalHandlerServer.readFully(input), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.awssamples.ec2.importkeypair;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.CreateTagsRequest;
+import software.amazon.awssdk.services.ec2.model.CreateTagsResponse;
+import software.amazon.awssdk.services.ec2.model.DeleteKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.DeleteTagsRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteTagsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairRequest;
+import software.amazon.awssdk.services.ec2.model.ImportKeyPairResponse;
+import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.HandlerErrorCode;
+import software.amazon.cloudformation.proxy.OperationStatus;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MultiRegionTest extends AbstractTestBase {
+    private static final String HOME_REGION = "us-west-2";
+    private static final List<String> REGIONS = Arrays.asList("us-east-2", "eu-west-1", HOME_REGION);
+
+    private AmazonWebServicesClientProxy proxy;
+    private Ec2Client ec2Client;
+    private final Map<String, Ec2Client> regionalClients = new HashMap<>();
+
+    @BeforeEach
+    public void setup() {
+        proxy = new AmazonWebServicesClientProxy(logger, MOCK_CREDENTIALS, () -> Duration.ofSeconds(600).toMillis());
+        ec2Client = mock(Ec2Client.class);
+        regionalClients.put("us-east-2", mock(Ec2Client.class));
+        regionalClients.put("eu-west-1", mock(Ec2Client.class));
+
+        when(ec2Client.importKeyPair(any(ImportKeyPairRequest.class))).thenReturn(ImportKeyPairResponse.builder()
+                .keyName(this.keyName)
+                .keyPairId(this.keyPairId)
+                .keyFingerprint(this.keyFingerprint)
+                .build());
+    }
+
+    @Test
+    public void create_ImportsIntoEveryRegionInParallel() {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        for (final Map.Entry<String, Ec2Client> client : regionalClients.entrySet()) {
+            when(client.getValue().importKeyPair(any(ImportKeyPairRequest.class))).thenAnswer(invocation -> {
+                // only returns once the other region's import is in flight too
+                bothStarted.countDown();
+                assertThat(bothStarted.await(10, TimeUnit.SECONDS)).isTrue();
+                return ImportKeyPairResponse.builder().keyPairId(idIn(client.getKey())).build();
+            });
+        }
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = create(new CallbackContext());
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getKeyPairId()).isEqualTo(this.keyPairId);
+        assertThat(RegionFanOut.fromModel(response.getResourceModel().getRegionalKeyPairIds()))
+                .containsEntry("us-east-2", idIn("us-east-2"))
+                .containsEntry("eu-west-1", idIn("eu-west-1"))
+                .doesNotContainKey(HOME_REGION);
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+    }
+
+    @Test
+    public void create_PartialFailureResumesOnlyMissingRegions() {
+        when(regionalClients.get("us-east-2").importKeyPair(any(ImportKeyPairRequest.class)))
+                .thenReturn(ImportKeyPairResponse.builder().keyPairId(idIn("us-east-2")).build());
+        when(regionalClients.get("eu-west-1").importKeyPair(any(ImportKeyPairRequest.class)))
+                .thenThrow(Ec2Exception.builder().statusCode(503).message("Service Unavailable").build())
+                .thenReturn(ImportKeyPairResponse.builder().keyPairId(idIn("eu-west-1")).build());
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(homeKeyPair());
+
+        final ProgressEvent<ResourceModel, CallbackContext> retry = create(new CallbackContext());
+
+        assertThat(retry.getStatus()).isEqualTo(OperationStatus.IN_PROGRESS);
+        assertThat(retry.getCallbackDelaySeconds()).isEqualTo(BaseHandlerStd.REGION_RETRY_DELAY_SECONDS);
+        assertThat(retry.getCallbackContext().getRegionalKeyPairIds()).containsOnlyKeys("us-east-2");
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = create(retry.getCallbackContext());
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(RegionFanOut.fromModel(response.getResourceModel().getRegionalKeyPairIds()))
+                .containsOnlyKeys("us-east-2", "eu-west-1");
+        verify(regionalClients.get("us-east-2")).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(regionalClients.get("eu-west-1"), times(2)).importKeyPair(any(ImportKeyPairRequest.class));
+        verify(ec2Client).importKeyPair(any(ImportKeyPairRequest.class));
+    }
+
+    @Test
+    public void create_RegionWithDifferentKeyFails() {
+        when(regionalClients.get("us-east-2").importKeyPair(any(ImportKeyPairRequest.class)))
+                .thenReturn(ImportKeyPairResponse.builder().keyPairId(idIn("us-east-2")).build());
+        when(regionalClients.get("eu-west-1").importKeyPair(any(ImportKeyPairRequest.class)))
+                .thenThrow(Ec2Exception.builder()
+                        .awsErrorDetails(AwsErrorDetails.builder().errorCode("InvalidKeyPair.Duplicate").build())
+                        .statusCode(400)
+                        .message("The keypair already exists")
+                        .build());
+        when(regionalClients.get("eu-west-1").describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder()
+                        .keyPairs(KeyPairInfo.builder()
+                                .keyName(this.keyName)
+                                .keyPairId(idIn("eu-west-1"))
+                                .keyFingerprint("00:11:22:33:44:55:66:77:88:99:aa:bb:cc:dd:ee:ff")
+                                .build())
+                        .build());
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = create(new CallbackContext());
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.AlreadyExists);
+        assertThat(response.getMessage()).contains("eu-west-1");
+    }
+
+    @Test
+    public void delete_DeletesFromEveryRegion() {
+        for (final Ec2Client client : regionalClients.values()) {
+            when(client.deleteKeyPair(any(DeleteKeyPairRequest.class))).thenReturn(DeleteKeyPairResponse.builder().build());
+        }
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(homeKeyPair());
+        when(ec2Client.deleteKeyPair(any(DeleteKeyPairRequest.class))).thenReturn(DeleteKeyPairResponse.builder().build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .region(HOME_REGION)
+                .desiredResourceState(regionalModel())
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = deleteHandler()
+                .handleRequest(proxy, request, new CallbackContext(), MOCK_PROXY(proxy, ec2Client), logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        verify(regionalClients.get("us-east-2")).deleteKeyPair(any(DeleteKeyPairRequest.class));
+        verify(regionalClients.get("eu-west-1")).deleteKeyPair(any(DeleteKeyPairRequest.class));
+        verify(ec2Client).deleteKeyPair(any(DeleteKeyPairRequest.class));
+    }
+
+    @Test
+    public void delete_RegionalFailureKeepsPrimaryKeyPair() {
+        when(regionalClients.get("us-east-2").deleteKeyPair(any(DeleteKeyPairRequest.class)))
+                .thenReturn(DeleteKeyPairResponse.builder().build());
+        when(regionalClients.get("eu-west-1").deleteKeyPair(any(DeleteKeyPairRequest.class)))
+                .thenThrow(Ec2Exception.builder().statusCode(500).message("Internal Error").build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .region(HOME_REGION)
+                .desiredResourceState(regionalModel())
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = deleteHandler()
+                .handleRequest(proxy, request, new CallbackContext(), MOCK_PROXY(proxy, ec2Client), logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.IN_PROGRESS);
+        assertThat(response.getCallbackContext().getCompletedRegions()).containsExactly("us-east-2");
+        verify(ec2Client, never()).deleteKeyPair(any(DeleteKeyPairRequest.class));
+    }
+
+    @Test
+    public void update_TagsEveryRegion() {
+        for (final Ec2Client client : regionalClients.values()) {
+            when(client.deleteTags(any(DeleteTagsRequest.class))).thenReturn(DeleteTagsResponse.builder().build());
+            when(client.createTags(any(CreateTagsRequest.class))).thenReturn(CreateTagsResponse.builder().build());
+        }
+        // the key pair still carries a tag the update drops, and lacks the desired ones
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(DescribeKeyPairsResponse.builder()
+                .keyPairs(getKeyPairInfo(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .keyFingerprint(this.keyFingerprint)
+                        .tags(Arrays.asList(Tag.builder().key("stale").value("value").build()))
+                        .build()))
+                .build());
+        when(ec2Client.deleteTags(any(DeleteTagsRequest.class))).thenReturn(DeleteTagsResponse.builder().build());
+        when(ec2Client.createTags(any(CreateTagsRequest.class))).thenReturn(CreateTagsResponse.builder().build());
+
+        // the desired state of an update carries neither the create-only nor the read-only properties
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .region(HOME_REGION)
+                .previousResourceState(regionalModel())
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .tags(this.tags)
+                        .build())
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = updateHandler()
+                .handleRequest(proxy, request, new CallbackContext(), MOCK_PROXY(proxy, ec2Client), logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(response.getResourceModel().getRegionalKeyPairIds()).isEqualTo(regionalModel().getRegionalKeyPairIds());
+        for (final Ec2Client client : regionalClients.values()) {
+            verify(client).deleteTags(any(DeleteTagsRequest.class));
+            verify(client).createTags(any(CreateTagsRequest.class));
+        }
+        assertThat(response.getCallbackContext().getCompletedSteps()).containsExactly(CallbackContext.Step.values());
+    }
+
+    @Test
+    public void update_RegionalFailureResumesFromTheSerializedContext() {
+        when(regionalClients.get("us-east-2").createTags(any(CreateTagsRequest.class)))
+                .thenReturn(CreateTagsResponse.builder().build());
+        when(regionalClients.get("eu-west-1").createTags(any(CreateTagsRequest.class)))
+                .thenThrow(Ec2Exception.builder().statusCode(503).message("Service Unavailable").build())
+                .thenReturn(CreateTagsResponse.builder().build());
+        // nothing to remove, so the serialized context leaves the tags to remove out
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(homeKeyPair());
+        when(ec2Client.createTags(any(CreateTagsRequest.class))).thenReturn(CreateTagsResponse.builder().build());
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .region(HOME_REGION)
+                .previousResourceState(regionalModel())
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .tags(this.tags)
+                        .build())
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> retry = updateHandler()
+                .handleRequest(proxy, request, new CallbackContext(), MOCK_PROXY(proxy, ec2Client), logger);
+
+        assertThat(retry.getStatus()).isEqualTo(OperationStatus.IN_PROGRESS);
+        assertThat(retry.getCallbackContext().getCompletedRegions()).containsExactly("us-east-2");
+        final CallbackContext resumed = roundTrip(retry.getCallbackContext());
+        assertThat(resumed.getTagsToRemove()).isEmpty();
+        assertThat(resumed.getTagsToAdd()).containsOnlyKeys("key1", "key2");
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = updateHandler()
+                .handleRequest(proxy, request, resumed, MOCK_PROXY(proxy, ec2Client), logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        verify(ec2Client).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client).createTags(any(CreateTagsRequest.class));
+        verify(regionalClients.get("us-east-2")).createTags(any(CreateTagsRequest.class));
+        verify(regionalClients.get("eu-west-1"), times(2)).createTags(any(CreateTagsRequest.class));
+        for (final Ec2Client client : regionalClients.values()) {
+            verify(client, never()).deleteTags(any(DeleteTagsRequest.class));
+        }
+    }
+
+    @Test
+    public void update_ProgressOfAnotherVersionIsDiscarded() {
+        when(regionalClients.get("us-east-2").createTags(any(CreateTagsRequest.class)))
+                .thenReturn(CreateTagsResponse.builder().build());
+        when(regionalClients.get("eu-west-1").createTags(any(CreateTagsRequest.class)))
+                .thenThrow(Ec2Exception.builder().statusCode(503).message("Service Unavailable").build())
+                .thenReturn(CreateTagsResponse.builder().build());
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(homeKeyPair());
+        when(ec2Client.createTags(any(CreateTagsRequest.class))).thenReturn(CreateTagsResponse.builder().build());
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .region(HOME_REGION)
+                .previousResourceState(regionalModel())
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .tags(this.tags)
+                        .build())
+                .build();
+        final ProgressEvent<ResourceModel, CallbackContext> retry = updateHandler()
+                .handleRequest(proxy, request, new CallbackContext(), MOCK_PROXY(proxy, ec2Client), logger);
+        assertThat(retry.getStatus()).isEqualTo(OperationStatus.IN_PROGRESS);
+        // as if written by a version of the handler whose progress meant something else
+        final CallbackContext resumed = roundTrip(retry.getCallbackContext());
+        resumed.setProgressVersion(CallbackContext.PROGRESS_VERSION + 1);
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = updateHandler()
+                .handleRequest(proxy, request, resumed, MOCK_PROXY(proxy, ec2Client), logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        assertThat(resumed.getProgressVersion()).isEqualTo(CallbackContext.PROGRESS_VERSION);
+        // the home steps run again, the regions already done are not visited again
+        verify(ec2Client, times(2)).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(ec2Client, times(2)).createTags(any(CreateTagsRequest.class));
+        verify(regionalClients.get("us-east-2")).createTags(any(CreateTagsRequest.class));
+        verify(regionalClients.get("eu-west-1"), times(2)).createTags(any(CreateTagsRequest.class));
+    }
+
+    @Test
+    public void clientBuilder_CachesClientPerRegion() {
+        assertThat(ClientBuilder.getClient("us-east-2")).isSameAs(ClientBuilder.getClient("us-east-2"));
+        assertThat(ClientBuilder.getClient("us-east-2")).isNotSameAs(ClientBuilder.getClient("eu-west-1"));
+    }
+
+    /**
+     * Runs one invocation of a create with the given context, as CloudFormation hands it back
+     * after the wrapper wrote it out.
+     */
+    private ProgressEvent<ResourceModel, CallbackContext> create(final CallbackContext context) {
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .clientRequestToken("token")
+                .region(HOME_REGION)
+                .desiredResourceState(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .publicKeyMaterial(this.publicKeyMaterial)
+                        .regions(REGIONS)
+                        .build())
+                .build();
+        return createHandler().handleRequest(proxy, request, roundTrip(context), MOCK_PROXY(proxy, ec2Client), logger);
+    }
+
+    // the handlers reach the additional regions through these mocks instead of ClientBuilder
+    private CreateHandler createHandler() {
+        return new CreateHandler() {
+            @Override
+            protected ProxyClient<Ec2Client> proxyClientFor(final AmazonWebServicesClientProxy proxy, final String region) {
+                return MOCK_PROXY(proxy, regionalClients.get(region));
+            }
+        };
+    }
+
+    private DeleteHandler deleteHandler() {
+        return new DeleteHandler() {
+            @Override
+            protected ProxyClient<Ec2Client> proxyClientFor(final AmazonWebServicesClientProxy proxy, final String region) {
+                return MOCK_PROXY(proxy, regionalClients.get(region));
+            }
+        };
+    }
+
+    private UpdateHandler updateHandler() {
+        return new UpdateHandler() {
+            @Override
+            protected ProxyClient<Ec2Client> proxyClientFor(final AmazonWebServicesClientProxy proxy, final String region) {
+                return MOCK_PROXY(proxy, regionalClients.get(region));
+            }
+        };
+    }
+
+    private ResourceModel regionalModel() {
+        return ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyPairId(this.keyPairId)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .tags(this.tags)
+                .regions(REGIONS)
+                .regionalKeyPairIds(Arrays.asList(
+                        RegionalKeyPair.builder().region("us-east-2").keyPairId(idIn("us-east-2")).build(),
+                        RegionalKeyPair.builder().region("eu-west-1").keyPairId(idIn("eu-west-1")).build()))
+                .build();
+    }
+
+    private DescribeKeyPairsResponse homeKeyPair() {
+        return DescribeKeyPairsResponse.builder()
+                .keyPairs(getKeyPairInfo(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .keyFingerprint(this.keyFingerprint)
+                        .build()))
+                .build();
+    }
+
+    private static String idIn(final String region) {
+        return "key-" + region;
+    }
+}
@@ -0,0 +1,82 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotFoundCacheTest extends AbstractTestBase {
+
+    private final AtomicLong now = new AtomicLong();
+    private final NotFoundCache cache = new NotFoundCache(30, now::get);
+    private final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+            .awsAccountId("123456789012")
+            .region("us-east-1")
+            .build();
+
+    @Test
+    public void isMissing_UntilTtlExpires() {
+        cache.markMissing(request, keyPairId);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(29));
+        assertThat(cache.isMissing(request, keyPairId)).isTrue();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(cache.isMissing(request, keyPairId)).isFalse();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.hits()).isEqualTo(1);
+    }
+
+    @Test
+    public void isMissing_ScopedToAccountAndRegion() {
+        cache.markMissing(request, keyPairId);
+
+        assertThat(cache.isMissing(ResourceHandlerRequest.<ResourceModel>builder()
+                .awsAccountId("210987654321")
+                .region("us-east-1")
+                .build(), keyPairId)).isFalse();
+        assertThat(cache.isMissing(ResourceHandlerRequest.<ResourceModel>builder()
+                .awsAccountId("123456789012")
+                .region("eu-west-1")
+                .build(), keyPairId)).isFalse();
+        assertThat(cache.isMissing(request, "key-0123456789abcdef0")).isFalse();
+    }
+
+    @Test
+    public void clear_ForgetsKeyPair() {
+        cache.markMissing(request, keyPairId);
+        cache.clear(request, keyPairId);
+
+        assertThat(cache.isMissing(request, keyPairId)).isFalse();
+    }
+
+    @Test
+    public void disabledWithZeroTtl() {
+        final NotFoundCache disabled = new NotFoundCache(0, now::get);
+        disabled.markMissing(request, keyPairId);
+
+        assertThat(disabled.isMissing(request, keyPairId)).isFalse();
+        assertThat(disabled.size()).isZero();
+    }
+
+    @Test
+    public void ignoresMissingId() {
+        cache.markMissing(request, null);
+
+        assertThat(cache.isMissing(request, null)).isFalse();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void parseTtl() {
+        assertThat(NotFoundCache.parseTtl(null)).isEqualTo(NotFoundCache.DEFAULT_TTL_SECONDS);
+        assertThat(NotFoundCache.parseTtl(" ")).isEqualTo(NotFoundCache.DEFAULT_TTL_SECONDS);
+        assertThat(NotFoundCache.parseTtl("soon")).isEqualTo(NotFoundCache.DEFAULT_TTL_SECONDS);
+        assertThat(NotFoundCache.parseTtl("5")).isEqualTo(5);
+        assertThat(NotFoundCache.parseTtl("0")).isZero();
+        assertThat(NotFoundCache.parseTtl("-1")).isZero();
+    }
+}
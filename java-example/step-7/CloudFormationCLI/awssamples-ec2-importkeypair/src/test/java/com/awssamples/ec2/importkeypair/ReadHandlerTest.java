@@ -8,8 +8,8 @@ import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
 import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 import software.amazon.cloudformation.exceptions.CfnGeneralServiceException;
-import software.amazon.cloudformation.exceptions.CfnNotFoundException;
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.OperationStatus;
 import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
@@ -26,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -130,8 +131,82 @@ public class ReadHandlerTest extends AbstractTestBase {
                 .desiredResourceState(model)
                 .build();
 
-        assertThrows(CfnNotFoundException.class,
-                () -> handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger));
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.NotFound);
+        assertThat(response.getMessage()).isNotEmpty();
+        verify(sdkClient).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(sdkClient, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_DeletedKeyPairIsCached() {
+        final ReadHandler handler = new ReadHandler();
+
+        final ResourceModel model = ResourceModel.builder().keyPairId(keyPairId).build();
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().keyPairs(getKeyPairInfo(model)).build());
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        assertThat(handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger).getStatus())
+                .isEqualTo(OperationStatus.SUCCESS);
+        // as DeleteHandler does once DeleteKeyPair succeeded
+        NotFoundCache.getInstance().markMissing(request, keyPairId);
+        final long hits = NotFoundCache.getInstance().hits();
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.NotFound);
+        assertThat(NotFoundCache.getInstance().hits()).isEqualTo(hits + 1);
+        // only the read before the delete reached EC2
+        verify(sdkClient).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(sdkClient, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_NotFoundIsNotCached() {
+        final ReadHandler handler = new ReadHandler();
+
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(ResourceModel.builder().keyPairId(keyPairId).build())
+                .build();
+
+        // a key pair imported moments ago may not be described yet, so every read asks EC2 again
+        handler.handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.NotFound);
+        assertThat(NotFoundCache.getInstance().isMissing(request, keyPairId)).isFalse();
+        verify(sdkClient, times(2)).describeKeyPairs(any(DescribeKeyPairsRequest.class));
+        verify(sdkClient, atLeastOnce()).serviceName();
+    }
+
+    @Test
+    public void handleRequest_NotFoundCacheIsScopedToRegion() {
+        final ReadHandler handler = new ReadHandler();
+
+        when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+        NotFoundCache.getInstance().markMissing(ResourceHandlerRequest.<ResourceModel>builder()
+                .region("us-east-1")
+                .build(), keyPairId);
+
+        handler.handleRequest(proxy, ResourceHandlerRequest.<ResourceModel>builder()
+                .region("us-west-2")
+                .desiredResourceState(ResourceModel.builder().keyPairId(keyPairId).build())
+                .build(), new CallbackContext(), proxyClient, logger);
+
+        verify(sdkClient).describeKeyPairs(any(DescribeKeyPairsRequest.class));
         verify(sdkClient, atLeastOnce()).serviceName();
     }
 }
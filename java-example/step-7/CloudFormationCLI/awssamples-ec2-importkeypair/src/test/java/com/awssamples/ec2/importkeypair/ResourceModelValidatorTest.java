@@ -0,0 +1,118 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceModelValidatorTest extends AbstractTestBase {
+
+    private final ResourceModelValidator validator = ResourceModelValidator.getInstance();
+
+    private ResourceModel.ResourceModelBuilder validModel() {
+        return ResourceModel.builder()
+                .keyName(this.keyName)
+                .publicKeyMaterial(this.publicKeyMaterial)
+                .tags(this.tags);
+    }
+
+    @Test
+    public void validate_ValidModel() {
+        assertThat(validator.validate(validModel().build(), true)).isNull();
+    }
+
+    @Test
+    public void validate_MissingModel() {
+        assertThat(validator.validate(null, false)).isNotNull();
+    }
+
+    @Test
+    public void validate_RequiredProperties() {
+        assertThat(validator.validate(validModel().keyName(null).build(), true)).contains("KeyName");
+        assertThat(validator.validate(validModel().publicKeyMaterial(null).build(), true)).contains("PublicKeyMaterial");
+        // required properties are create-only, an update does not have to carry them
+        assertThat(validator.validate(validModel().publicKeyMaterial(null).build(), false)).isNull();
+    }
+
+    @Test
+    public void validate_TagKeyLength() {
+        assertThat(validator.validate(withTag(repeat('k', 128), "value"), true)).isNull();
+        assertThat(validator.validate(withTag(repeat('k', 129), "value"), true)).isNotNull();
+        assertThat(validator.validate(withTag("", "value"), true)).isNotNull();
+    }
+
+    @Test
+    public void validate_TagValueLength() {
+        assertThat(validator.validate(withTag("key", ""), true)).isNull();
+        assertThat(validator.validate(withTag("key", repeat('v', 256)), true)).isNull();
+        assertThat(validator.validate(withTag("key", repeat('v', 257)), true)).isNotNull();
+    }
+
+    @Test
+    public void validate_TagLengthCountsCharactersNotCodeUnits() {
+        // each of these is one character but two UTF-16 code units
+        final String emoji = new String(Character.toChars(0x1F511));
+        final StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 128; i++) {
+            key.append(emoji);
+        }
+        assertThat(validator.validate(withTag(key.toString(), "value"), true)).isNull();
+    }
+
+    @Test
+    public void validate_TagMissingValue() {
+        assertThat(validator.validate(withTag("key", null), true)).isNotNull();
+    }
+
+    @Test
+    public void validate_TagReservedPrefix() {
+        assertThat(validator.validate(withTag("aws:cloudformation:stack-name", "value"), true)).contains("aws:");
+        assertThat(validator.validate(withTag("AWS:key", "value"), true)).contains("aws:");
+        assertThat(validator.validate(withTag("key", "aws:value"), true)).contains("aws:");
+        assertThat(validator.validate(withTag("team:aws", "value"), true)).isNull();
+    }
+
+    @Test
+    public void validate_TagCharacters() {
+        assertThat(validator.validate(withTag("kubernetes.io/cluster", "owned by @team=a+b_c-d"), true)).isNull();
+        assertThat(validator.validate(withTag("\u00e9quipe", "\u30c1\u30fc\u30e0 1"), true)).isNull();
+        assertThat(validator.validate(withTag("key*", "value"), true)).isNotNull();
+        assertThat(validator.validate(withTag("key", "value;"), true)).isNotNull();
+    }
+
+    @Test
+    public void validate_DuplicateTagKeys() {
+        final ResourceModel model = validModel()
+                .tags(Arrays.asList(Tag.builder().key("key").value("a").build(), Tag.builder().key("key").value("b").build()))
+                .build();
+        assertThat(validator.validate(model, true)).contains("more than once");
+    }
+
+    @Test
+    public void validate_PublicKeyMaterial() {
+        assertThat(validator.validate(validModel().publicKeyMaterial("invalid").build(), true)).contains("PublicKeyMaterial");
+        assertThat(validator.validate(validModel().publicKeyMaterial("invalid").build(), false)).contains("PublicKeyMaterial");
+    }
+
+    @Test
+    public void validate_Regions() {
+        assertThat(validator.validate(validModel().regions(Arrays.asList("us-east-2", "eu-west-1", "ap-southeast-2")).build(), true)).isNull();
+        assertThat(validator.validate(validModel().regions(Arrays.asList("us-gov-west-1")).build(), true)).isNull();
+        assertThat(validator.validate(validModel().regions(Arrays.asList("US-EAST-2")).build(), true)).contains("US-EAST-2");
+        assertThat(validator.validate(validModel().regions(Arrays.asList("us-east-2", "us-east-2")).build(), true)).contains("more than once");
+    }
+
+    private ResourceModel withTag(final String key, final String value) {
+        return validModel()
+                .tags(Collections.singletonList(Tag.builder().key(key).value(value).build()))
+                .build();
+    }
+
+    private static String repeat(final char c, final int count) {
+        final char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,108 @@
+package com.awssamples.ec2.importkeypair;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void execute_SequentialCallsAreNotShared() {
+        final AtomicInteger calls = new AtomicInteger();
+
+        assertThat(singleFlight.execute("key", () -> "result-" + calls.incrementAndGet())).isEqualTo("result-1");
+        assertThat(singleFlight.execute("key", () -> "result-" + calls.incrementAndGet())).isEqualTo("result-2");
+
+        assertThat(singleFlight.calls()).isEqualTo(2);
+        assertThat(singleFlight.sharedCalls()).isZero();
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    public void execute_ConcurrentCallersShareResult() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final List<Future<String>> results = runConcurrently(() -> singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "result";
+        }), release);
+
+        for (final Future<String> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(singleFlight.sharedCalls()).isEqualTo(CALLERS - 1);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    public void execute_ConcurrentCallersShareException() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final List<Future<String>> results = runConcurrently(() -> singleFlight.execute("key", () -> {
+            await(release);
+            throw new IllegalArgumentException("failed");
+        }), release);
+
+        for (final Future<String> result : results) {
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class).hasMessage("failed");
+        }
+        assertThat(singleFlight.calls()).isEqualTo(1);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    public void execute_DifferentKeysAreNotShared() {
+        assertThat(singleFlight.execute("a", () -> "a")).isEqualTo("a");
+        assertThat(singleFlight.execute("b", () -> "b")).isEqualTo("b");
+        assertThat(singleFlight.calls()).isEqualTo(2);
+    }
+
+    /**
+     * Starts the callers and only releases the call once all but the first are waiting on it.
+     */
+    private List<Future<String>> runConcurrently(final Callable<String> caller,
+            final CountDownLatch release) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            final List<Future<String>> results = new ArrayList<>(CALLERS);
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(caller));
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (singleFlight.sharedCalls() < CALLERS - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.awssamples.ec2.importkeypair;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.OperationStatus;
+import software.amazon.cloudformation.proxy.ProgressEvent;
+import software.amazon.cloudformation.proxy.ProxyClient;
+import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TracingTest extends AbstractTestBase {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private Path traceFile;
+    private AmazonWebServicesClientProxy proxy;
+    private Ec2Client ec2Client;
+
+    @BeforeEach
+    public void setup() {
+        traceFile = directory.resolve("traces.json");
+        proxy = new AmazonWebServicesClientProxy(logger, MOCK_CREDENTIALS, () -> Duration.ofSeconds(600).toMillis());
+        ec2Client = mock(Ec2Client.class);
+    }
+
+    @AfterEach
+    public void tear_down() {
+        Tracing.exportTo(null);
+    }
+
+    @Test
+    public void disabled_NothingIsWrapped() {
+        final Function<String, String> function = Function.identity();
+        final ProxyClient<Ec2Client> proxyClient = MOCK_PROXY(proxy, ec2Client);
+        // the first call of the container is always timed
+        ConnectionPrewarm.recordFirstCall("DescribeKeyPairs", 0);
+
+        assertThat(Tracing.start("span", Tracing.SPAN_KIND_INTERNAL)).isSameAs(Tracing.NOOP);
+        assertThat(Tracing.stage("stage", function)).isSameAs(function);
+        assertThat(Tracing.translateToServiceRequest("action", function)).isSameAs(function);
+        assertThat(TracedProxyClient.wrap(proxyClient, null)).isSameAs(proxyClient);
+        assertThat(traceFile).doesNotExist();
+    }
+
+    @Test
+    public void read_ExportsOneTraceWithStageAndCallSpans() throws Exception {
+        Tracing.exportTo(traceFile);
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(DescribeKeyPairsResponse.builder()
+                .keyPairs(getKeyPairInfo(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .keyFingerprint(this.keyFingerprint)
+                        .build()))
+                .build());
+
+        final ProgressEvent<ResourceModel, CallbackContext> response;
+        try (Tracing.Span invocation = Tracing.start("ReadHandler", Tracing.SPAN_KIND_SERVER)) {
+            response = new ReadHandler().handleRequest(proxy, request(), new CallbackContext(),
+                    TracedProxyClient.wrap(MOCK_PROXY(proxy, ec2Client), null), logger);
+        }
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        final List<String> lines = Files.readAllLines(traceFile, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(1);
+        final JsonNode resourceSpans = MAPPER.readTree(lines.get(0)).get("resourceSpans").get(0);
+        assertThat(resourceSpans.at("/resource/attributes/0/value/stringValue").asText())
+                .isEqualTo(ResourceModel.TYPE_NAME);
+        final Map<String, JsonNode> spans = spansByName(resourceSpans.at("/scopeSpans/0/spans"));
+        assertThat(spans).containsOnlyKeys("ReadHandler", "AWSSamples-EC2-ImportKeyPair::Read",
+                "AWSSamples-EC2-ImportKeyPair::Read::translateToServiceRequest",
+                "AWSSamples-EC2-ImportKeyPair::Read::makeServiceCall", "EC2/DescribeKeyPairs");
+
+        final JsonNode root = spans.get("ReadHandler");
+        final JsonNode stage = spans.get("AWSSamples-EC2-ImportKeyPair::Read");
+        final JsonNode translate = spans.get("AWSSamples-EC2-ImportKeyPair::Read::translateToServiceRequest");
+        final JsonNode serviceCall = spans.get("AWSSamples-EC2-ImportKeyPair::Read::makeServiceCall");
+        final JsonNode call = spans.get("EC2/DescribeKeyPairs");
+        assertThat(root.has("parentSpanId")).isFalse();
+        assertThat(stage.get("parentSpanId").asText()).isEqualTo(root.get("spanId").asText());
+        assertThat(translate.get("parentSpanId").asText()).isEqualTo(stage.get("spanId").asText());
+        assertThat(serviceCall.get("parentSpanId").asText()).isEqualTo(stage.get("spanId").asText());
+        assertThat(call.get("parentSpanId").asText()).isEqualTo(serviceCall.get("spanId").asText());
+        assertThat(call.get("traceId").asText()).isEqualTo(root.get("traceId").asText()).hasSize(32);
+        assertThat(call.get("kind").asInt()).isEqualTo(Tracing.SPAN_KIND_CLIENT);
+        assertThat(call.get("status").get("code").asInt()).isEqualTo(1);
+        assertThat(attributes(call)).containsEntry("rpc.method", "DescribeKeyPairs").containsEntry("call.sequence", "1");
+        assertThat(attributes(stage)).containsEntry("action", "AWSSamples-EC2-ImportKeyPair::Read");
+        assertThat(attributes(serviceCall)).containsEntry("action", "AWSSamples-EC2-ImportKeyPair::Read")
+                .containsEntry("stage", "makeServiceCall");
+        assertThat(Long.parseLong(call.get("endTimeUnixNano").asText()))
+                .isGreaterThanOrEqualTo(Long.parseLong(call.get("startTimeUnixNano").asText()));
+    }
+
+    @Test
+    public void list_ExportsCallSpan() throws Exception {
+        Tracing.exportTo(traceFile);
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class)))
+                .thenReturn(DescribeKeyPairsResponse.builder().build());
+
+        final ProgressEvent<ResourceModel, CallbackContext> response;
+        try (Tracing.Span invocation = Tracing.start("ListHandler", Tracing.SPAN_KIND_SERVER)) {
+            response = new ListHandler().handleRequest(proxy, request(), new CallbackContext(),
+                    TracedProxyClient.wrap(MOCK_PROXY(proxy, ec2Client), null), logger);
+        }
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        final Map<String, JsonNode> spans = spansByName(MAPPER.readTree(Files.readAllLines(traceFile,
+                StandardCharsets.UTF_8).get(0)).at("/resourceSpans/0/scopeSpans/0/spans"));
+        assertThat(spans).containsOnlyKeys("ListHandler", "EC2/DescribeKeyPairs");
+        assertThat(spans.get("EC2/DescribeKeyPairs").get("parentSpanId").asText())
+                .isEqualTo(spans.get("ListHandler").get("spanId").asText());
+    }
+
+    @Test
+    public void failedCall_MarksSpanWithErrorCode() throws Exception {
+        Tracing.exportTo(traceFile);
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenThrow(Ec2Exception.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("RequestLimitExceeded").build())
+                .statusCode(503)
+                .build());
+        final ProxyClient<Ec2Client> proxyClient = TracedProxyClient.wrap(MOCK_PROXY(proxy, ec2Client), "eu-west-1");
+
+        assertThatThrownBy(() -> proxyClient.injectCredentialsAndInvokeV2(DescribeKeyPairsRequest.builder().build(),
+                proxyClient.client()::describeKeyPairs)).isInstanceOf(Ec2Exception.class);
+
+        final JsonNode call = MAPPER.readTree(Files.readAllLines(traceFile, StandardCharsets.UTF_8).get(0))
+                .at("/resourceSpans/0/scopeSpans/0/spans/0");
+        assertThat(call.get("status").get("code").asInt()).isEqualTo(2);
+        assertThat(attributes(call)).containsEntry("error.type", "RequestLimitExceeded")
+                .containsEntry("cloud.region", "eu-west-1");
+    }
+
+    private ResourceHandlerRequest<ResourceModel> request() {
+        return ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(ResourceModel.builder().keyPairId(this.keyPairId).build())
+                .build();
+    }
+
+    private static Map<String, JsonNode> spansByName(final JsonNode spans) {
+        final Map<String, JsonNode> byName = new HashMap<>();
+        for (final JsonNode span : spans) {
+            byName.put(span.get("name").asText(), span);
+        }
+        return byName;
+    }
+
+    private static Map<String, String> attributes(final JsonNode span) {
+        final Map<String, String> attributes = new HashMap<>();
+        for (final JsonNode attribute : span.get("attributes")) {
+            final JsonNode value = attribute.get("value");
+            attributes.put(attribute.get("key").asText(), value.elements().next().asText());
+        }
+        return attributes;
+    }
+}
@@ -4,15 +4,17 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.CreateTagsRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteTagsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsRequest;
 import software.amazon.awssdk.services.ec2.model.DescribeKeyPairsResponse;
-import software.amazon.awssdk.services.ec2.model.KeyPairInfo;
 import software.amazon.cloudformation.proxy.AmazonWebServicesClientProxy;
+import software.amazon.cloudformation.proxy.HandlerErrorCode;
 import software.amazon.cloudformation.proxy.OperationStatus;
 import software.amazon.cloudformation.proxy.ProgressEvent;
 import software.amazon.cloudformation.proxy.ProxyClient;
@@ -20,13 +22,17 @@ import software.amazon.cloudformation.proxy.ResourceHandlerRequest;
 
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -65,14 +71,8 @@ public class UpdateHandlerTest extends AbstractTestBase {
                 .build();
                 
 
-        final KeyPairInfo keyPairInfo = this.getKeyPairInfo(model);
-
-        final DescribeKeyPairsResponse describeKeyPairsResponse = DescribeKeyPairsResponse
-                .builder()
-                .keyPairs(keyPairInfo)
-                .build();
         when(proxyClient.client().describeKeyPairs(any(DescribeKeyPairsRequest.class)))
-                .thenReturn(describeKeyPairsResponse);
+                .thenReturn(currentKeyPair());
 
 
 
@@ -90,9 +90,82 @@ public class UpdateHandlerTest extends AbstractTestBase {
         assertThat(response.getMessage()).isNull();
         assertThat(response.getErrorCode()).isNull();
 
-        verify(ec2Client).createTags(any(CreateTagsRequest.class));
+        // only the tag no longer wanted is removed, the changed and the new one are written over
+        final ArgumentCaptor<DeleteTagsRequest> deleteTagsRequest = ArgumentCaptor.forClass(DeleteTagsRequest.class);
+        verify(ec2Client).deleteTags(deleteTagsRequest.capture());
+        assertThat(deleteTagsRequest.getValue().resources()).containsExactly(this.keyPairId);
+        assertThat(deleteTagsRequest.getValue().tags()).containsExactly(
+                software.amazon.awssdk.services.ec2.model.Tag.builder().key("key3").build());
+        final ArgumentCaptor<CreateTagsRequest> createTagsRequest = ArgumentCaptor.forClass(CreateTagsRequest.class);
+        verify(ec2Client).createTags(createTagsRequest.capture());
+        assertThat(createTagsRequest.getValue().tags()).isEqualTo(TagHelper.translateTagsFromSdk(this.tags));
         verify(proxyClient.client(), times(1))
                 .describeKeyPairs(any(DescribeKeyPairsRequest.class));
         verify(ec2Client, atLeastOnce()).serviceName();
     }
+
+    @Test
+    public void handleRequest_UnchangedTagsMakeNoTagCalls() {
+        final ResourceModel model = desiredModel();
+        when(ec2Client.describeKeyPairs(any(DescribeKeyPairsRequest.class))).thenReturn(
+                DescribeKeyPairsResponse.builder().keyPairs(getKeyPairInfo(model)).build());
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = new UpdateHandler()
+                .handleRequest(proxy, request(model), new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.SUCCESS);
+        verify(ec2Client, never()).deleteTags(any(DeleteTagsRequest.class));
+        verify(ec2Client, never()).createTags(any(CreateTagsRequest.class));
+    }
+
+    private ResourceModel desiredModel() {
+        return ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyFingerprint(this.keyFingerprint)
+                .tags(this.tags)
+                .keyPairId(this.keyPairId)
+                .build();
+    }
+
+    private ResourceHandlerRequest<ResourceModel> request(final ResourceModel model) {
+        return ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+    }
+
+    // key1 holds another value, key2 is missing and key3 is no longer wanted
+    private DescribeKeyPairsResponse currentKeyPair() {
+        return DescribeKeyPairsResponse.builder()
+                .keyPairs(getKeyPairInfo(ResourceModel.builder()
+                        .keyName(this.keyName)
+                        .keyPairId(this.keyPairId)
+                        .keyFingerprint(this.keyFingerprint)
+                        .tags(Arrays.asList(
+                                Tag.builder().key("key1").value("old").build(),
+                                Tag.builder().key("key3").value("value3").build()))
+                        .build()))
+                .build();
+    }
+
+    @Test
+    public void handleRequest_InvalidTagFailsBeforeRead() {
+        final UpdateHandler handler = new UpdateHandler();
+
+        final ResourceModel model = ResourceModel.builder()
+                .keyName(this.keyName)
+                .keyPairId(this.keyPairId)
+                .tags(Collections.singletonList(Tag.builder().key("key").value(null).build()))
+                .build();
+
+        final ResourceHandlerRequest<ResourceModel> request = ResourceHandlerRequest.<ResourceModel>builder()
+                .desiredResourceState(model)
+                .build();
+
+        final ProgressEvent<ResourceModel, CallbackContext> response = handler
+                .handleRequest(proxy, request, new CallbackContext(), proxyClient, logger);
+
+        assertThat(response.getStatus()).isEqualTo(OperationStatus.FAILED);
+        assertThat(response.getErrorCode()).isEqualTo(HandlerErrorCode.InvalidRequest);
+        verifyNoInteractions(ec2Client);
+    }
 }